@@ -0,0 +1,223 @@
+package com.tlorrain.futile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An aggregation of elements into a single result, to be run together with other aggregations in a single traversal
+ * by {@link Futile#aggregateAll(Iterable, Aggregation[])}. Every run of an aggregation starts from a fresh
+ * accumulator, so the same aggregation can be used over several traversals.
+ */
+public abstract class Aggregation<T, R> {
+
+    /**
+     * Creates an aggregation, subclasses only have to provide fresh accumulators
+     */
+    protected Aggregation() {
+    }
+
+    /**
+     * Starts a run of this aggregation
+     *
+     * @return a new accumulator, receiving the elements of a single traversal
+     */
+    public abstract Accumulator<T, R> start();
+
+    /**
+     * Accumulates the elements of a single traversal into the result of an aggregation
+     */
+    public interface Accumulator<T, R> {
+        /**
+         * @param value the next element of the traversal
+         */
+        void add(T value);
+
+        /**
+         * @return the result of the aggregation, once every element was added
+         */
+        R result();
+    }
+
+    /**
+     * An aggregation accumulating the elements in a container, for instance a StringBuilder or a collection. Unlike
+     * {@link #fold(Object, Function2)}, every run starts from a new container built by the supplier, so the
+     * aggregation can be run several times.
+     *
+     * @param supplier    the function building the container of a run, called with null
+     * @param addFunction the function adding an element to the container, returning the container to use next
+     * @return an aggregation producing the container
+     * @throws NullPointerException if supplier or addFunction is null
+     */
+    public static <T, A> Aggregation<T, A> of(final Function1<Void, ? extends A> supplier, final Function2<? super A, ? super T, ? extends A> addFunction) {
+        if (supplier == null || addFunction == null) {
+            throw new NullPointerException("Cannot aggregate with a null supplier or function");
+        }
+        return new Aggregation<T, A>() {
+            @Override
+            public Accumulator<T, A> start() {
+                return new Accumulator<T, A>() {
+                    private A container = supplier.apply(null);
+
+                    @Override
+                    public void add(T value) {
+                        container = addFunction.apply(container, value);
+                    }
+
+                    @Override
+                    public A result() {
+                        return container;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * An aggregation applying a function across the elements, accumulating a value. As with
+     * {@link Futile#fold(Iterable, Object, Function2)}, the initial value is shared by every run.
+     *
+     * @param initialValue the initial value to use for the fold
+     * @param foldFunction the function to use for the fold
+     * @return an aggregation producing the result of the fold
+     * @throws NullPointerException if foldFunction is null
+     */
+    public static <T, U> Aggregation<T, U> fold(final U initialValue, final Function2<? super U, ? super T, ? extends U> foldFunction) {
+        if (foldFunction == null) {
+            throw new NullPointerException("Cannot fold with a null function");
+        }
+        return new Aggregation<T, U>() {
+            @Override
+            public Accumulator<T, U> start() {
+                return new Accumulator<T, U>() {
+                    private U accumulator = initialValue;
+
+                    @Override
+                    public void add(T value) {
+                        accumulator = foldFunction.apply(accumulator, value);
+                    }
+
+                    @Override
+                    public U result() {
+                        return accumulator;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * An aggregation grouping the elements by the result of a function, as {@link Futile#groupBy(Iterable, Function1)}
+     *
+     * @param groupByFunction the function to use to create the groups
+     * @return an aggregation producing a map of the elements grouped via the groupByFunction
+     * @throws NullPointerException if groupByFunction is null
+     */
+    public static <T, U> Aggregation<T, Map<U, List<T>>> groupBy(final Function1<? super T, ? extends U> groupByFunction) {
+        if (groupByFunction == null) {
+            throw new NullPointerException("Cannot group with a null function");
+        }
+        return new Aggregation<T, Map<U, List<T>>>() {
+            @Override
+            public Accumulator<T, Map<U, List<T>>> start() {
+                return new Accumulator<T, Map<U, List<T>>>() {
+                    private final Map<U, List<T>> groups = new HashMap<>();
+
+                    @Override
+                    public void add(T value) {
+                        U key = groupByFunction.apply(value);
+                        List<T> values = groups.get(key);
+                        if (values == null) {
+                            values = new ArrayList<>();
+                            groups.put(key, values);
+                        }
+                        values.add(value);
+                    }
+
+                    @Override
+                    public Map<U, List<T>> result() {
+                        return groups;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return an aggregation counting the elements
+     */
+    public static <T> Aggregation<T, Long> count() {
+        return new Aggregation<T, Long>() {
+            @Override
+            public Accumulator<T, Long> start() {
+                return new Accumulator<T, Long>() {
+                    private long count;
+
+                    @Override
+                    public void add(T value) {
+                        count++;
+                    }
+
+                    @Override
+                    public Long result() {
+                        return count;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return an aggregation collecting the elements in an ArrayList
+     */
+    public static <T> Aggregation<T, ArrayList<T>> toArrayList() {
+        return new Aggregation<T, ArrayList<T>>() {
+            @Override
+            public Accumulator<T, ArrayList<T>> start() {
+                return new Accumulator<T, ArrayList<T>>() {
+                    private final ArrayList<T> elements = new ArrayList<>();
+
+                    @Override
+                    public void add(T value) {
+                        elements.add(value);
+                    }
+
+                    @Override
+                    public ArrayList<T> result() {
+                        return elements;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * The results of aggregations run together by {@link Futile#aggregateAll(Iterable, Aggregation[])}
+     */
+    public static final class Results {
+        private final Map<Aggregation<?, ?>, Object> results;
+
+        Results(Map<Aggregation<?, ?>, Object> results) {
+            this.results = results;
+        }
+
+        /**
+         * @param aggregation one of the aggregations that were run
+         * @return the result of the aggregation
+         * @throws IllegalArgumentException if the aggregation was not run
+         */
+        @SuppressWarnings("unchecked")
+        public <R> R get(Aggregation<?, R> aggregation) {
+            if (!results.containsKey(aggregation)) {
+                throw new IllegalArgumentException(String.format("No result for aggregation %s", aggregation));
+            }
+            return (R) results.get(aggregation);
+        }
+
+        @Override
+        public String toString() {
+            return "Results{ " + results.values() + " }";
+        }
+    }
+}
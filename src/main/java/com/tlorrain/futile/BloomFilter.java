@@ -0,0 +1,101 @@
+package com.tlorrain.futile;
+
+/**
+ * A set membership test in fixed memory that may answer that an element is present when it is not, but never the
+ * opposite (Bloom filter). By default elements are hashed from their hashCode, whose collisions add to the false
+ * positives : elements with a poor or 32 bits only hashCode should be hashed by a hasher of their own, producing 64 bits
+ * hashes. Filters built with the same parameters and the same hasher from different parts of an input can be merged.
+ */
+public final class BloomFilter<T> {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final Function1<? super T, Long> hasher;
+
+    /**
+     * @param expectedInsertions      the number of elements expected to be added to the filter
+     * @param falsePositiveProbability the wanted probability of mightContain wrongly returning true once
+     *                                 expectedInsertions elements were added
+     * @throws IllegalArgumentException if expectedInsertions is not positive or falsePositiveProbability is not
+     *                                  strictly between 0 and 1
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        this(expectedInsertions, falsePositiveProbability, Hashing.HASH_CODE);
+    }
+
+    /**
+     * @param expectedInsertions       the number of elements expected to be added to the filter
+     * @param falsePositiveProbability the wanted probability of mightContain wrongly returning true once
+     *                                 expectedInsertions elements were added
+     * @param hasher                   the function hashing the elements, uniformly over 64 bits
+     * @throws IllegalArgumentException if expectedInsertions is not positive or falsePositiveProbability is not
+     *                                  strictly between 0 and 1
+     * @throws NullPointerException     if hasher is null
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveProbability, Function1<? super T, Long> hasher) {
+        if (hasher == null) {
+            throw new NullPointerException("Cannot hash with a null hasher");
+        }
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException(String.format("Expected a positive number of insertions but got %d", expectedInsertions));
+        }
+        if (!(falsePositiveProbability > 0 && falsePositiveProbability < 1)) {
+            throw new IllegalArgumentException(String.format("Expected a false positive probability between 0 and 1 but got %s", falsePositiveProbability));
+        }
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (ln2 * ln2));
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64)];
+        this.bitCount = bits.length * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * ln2));
+        this.hasher = hasher;
+    }
+
+    public void add(T value) {
+        long hash = hasher.apply(value);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = bitIndex(hash, i);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false if the value was never added to this filter, true if it probably was
+     */
+    public boolean mightContain(T value) {
+        long hash = hasher.apply(value);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = bitIndex(hash, i);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long bitIndex(long hash, int i) {
+        // double hashing : the two halves of the hash generate all the probe positions
+        long combined = (hash >>> 32) + i * (hash & 0xFFFFFFFFL);
+        return (combined & Long.MAX_VALUE) % bitCount;
+    }
+
+    /**
+     * Merges another filter in this one, so that this filter contains the elements added to both of them
+     *
+     * @param other the filter to merge, left unchanged, which must hash elements as this one
+     * @throws IllegalArgumentException if the filters were not created with the same parameters
+     */
+    public void merge(BloomFilter<T> other) {
+        if (other.bitCount != bitCount || other.hashCount != hashCount) {
+            throw new IllegalArgumentException("Cannot merge Bloom filters created with different parameters");
+        }
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] |= other.bits[i];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BloomFilter{ bits=" + bitCount + ", hashes=" + hashCount + " }";
+    }
+}
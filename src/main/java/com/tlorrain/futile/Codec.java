@@ -0,0 +1,23 @@
+package com.tlorrain.futile;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary encoding of values, used to persist Futiles. See {@link Codecs} for codecs of common types.
+ */
+public interface Codec<T> {
+
+    /**
+     * @return the number of bytes every encoded value takes, or -1 if encoded values have variable sizes
+     */
+    int fixedSize();
+
+    void encode(T value, DataOutput out) throws IOException;
+
+    /**
+     * @param buffer a buffer positioned at the start of the encoded value, its limit being the end of the value
+     */
+    T decode(ByteBuffer buffer);
+}
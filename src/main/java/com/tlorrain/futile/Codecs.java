@@ -0,0 +1,88 @@
+package com.tlorrain.futile;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codecs for common types
+ */
+public final class Codecs {
+
+    public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+        @Override
+        public int fixedSize() {
+            return 4;
+        }
+
+        @Override
+        public void encode(Integer value, DataOutput out) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+    };
+
+    public static final Codec<Long> LONG = new Codec<Long>() {
+        @Override
+        public int fixedSize() {
+            return 8;
+        }
+
+        @Override
+        public void encode(Long value, DataOutput out) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public Long decode(ByteBuffer buffer) {
+            return buffer.getLong();
+        }
+    };
+
+    public static final Codec<Double> DOUBLE = new Codec<Double>() {
+        @Override
+        public int fixedSize() {
+            return 8;
+        }
+
+        @Override
+        public void encode(Double value, DataOutput out) throws IOException {
+            out.writeDouble(value);
+        }
+
+        @Override
+        public Double decode(ByteBuffer buffer) {
+            return buffer.getDouble();
+        }
+    };
+
+    /**
+     * Encodes strings as UTF-8
+     */
+    public static final Codec<String> STRING = new Codec<String>() {
+        @Override
+        public int fixedSize() {
+            return -1;
+        }
+
+        @Override
+        public void encode(String value, DataOutput out) throws IOException {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String decode(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    private Codecs() {
+    }
+}
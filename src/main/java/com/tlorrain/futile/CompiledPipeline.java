@@ -0,0 +1,180 @@
+package com.tlorrain.futile;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A processing pipeline compiled into a class of its own. Stages only describe the work to do : the first time a
+ * terminal operation runs, a class looping over the source and calling the functions of every stage in sequence is
+ * generated for this very pipeline, then reused by its following runs. Each element goes through all the stages
+ * before the next one is read, and no intermediate collection is built, unlike the stages of a {@link Futile} which
+ * each produce a list.
+ * <p>
+ * Every stage has its own call site in the generated class, so the JIT sees a single function at each of them and can
+ * inline the whole pipeline into one loop. Generating a class is costly though : build a pipeline once and run it many
+ * times rather than compiling a new one for every run. Adding a stage returns a new pipeline, compiled separately, and
+ * leaves this one untouched. Pipelines are created by {@link Futile#compile()}.
+ */
+public final class CompiledPipeline<T> {
+
+    private final Iterable<?> source;
+    private final int[] kinds;
+    private final Object[] functions;
+    private Constructor<?> fused;
+
+    private CompiledPipeline(Iterable<?> source, int[] kinds, Object[] functions) {
+        this.source = source;
+        this.kinds = kinds;
+        this.functions = functions;
+    }
+
+    static <T> CompiledPipeline<T> from(Iterable<T> iterable) {
+        return new CompiledPipeline<>(iterable, new int[0], new Object[0]);
+    }
+
+    private <U> CompiledPipeline<U> then(int kind, Object function) {
+        if (kinds.length == PipelineCompiler.MAX_STAGES) {
+            throw new IllegalStateException(String.format("Cannot compile a pipeline of more than %d stages", PipelineCompiler.MAX_STAGES));
+        }
+        int[] newKinds = Arrays.copyOf(kinds, kinds.length + 1);
+        newKinds[kinds.length] = kind;
+        Object[] newFunctions = Arrays.copyOf(functions, functions.length + 1);
+        newFunctions[functions.length] = function;
+        return new CompiledPipeline<>(source, newKinds, newFunctions);
+    }
+
+    /**
+     * Pushes every element produced by this pipeline to a sink, through an instance of the generated class
+     */
+    @SuppressWarnings("unchecked")
+    private void run(Closure<? super T> sink) {
+        Closure<Object> loop;
+        try {
+            loop = (Closure<Object>) fusedConstructor().newInstance(functions, sink);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot instantiate the compiled pipeline", e);
+        }
+        loop.apply(source);
+    }
+
+    private synchronized Constructor<?> fusedConstructor() {
+        if (fused == null) {
+            fused = PipelineCompiler.compile(kinds);
+        }
+        return fused;
+    }
+
+    /**
+     * Adds a stage keeping only the elements matching a predicate
+     *
+     * @param predicate the predicate to use for filtering
+     * @return a pipeline of the filtered elements
+     * @throws NullPointerException if predicate is null
+     * @throws IllegalStateException if the pipeline already has the maximum number of stages, 16384
+     */
+    public CompiledPipeline<T> filter(Predicate<? super T> predicate) {
+        if (predicate == null) {
+            throw new NullPointerException("Cannot filter with a null predicate");
+        }
+        return then(PipelineCompiler.FILTER, predicate);
+    }
+
+    /**
+     * Adds a stage applying a function to every element
+     *
+     * @param mapFunction the function to apply on every element
+     * @return a pipeline of the results of mapFunction
+     * @throws NullPointerException if mapFunction is null
+     * @throws IllegalStateException if the pipeline already has the maximum number of stages, 16384
+     */
+    public <U> CompiledPipeline<U> map(Function1<? super T, ? extends U> mapFunction) {
+        if (mapFunction == null) {
+            throw new NullPointerException("Cannot map with a null function");
+        }
+        return then(PipelineCompiler.MAP, mapFunction);
+    }
+
+    /**
+     * Adds a stage applying a function to every element and flattening its results
+     *
+     * @param mapFunction the function to apply on every element
+     * @return a pipeline of the flattened results of mapFunction
+     * @throws NullPointerException if mapFunction is null, or when the pipeline runs if mapFunction returns null
+     * @throws IllegalStateException if the pipeline already has the maximum number of stages, 16384
+     */
+    public <U> CompiledPipeline<U> flatMap(Function1<? super T, ? extends Iterable<? extends U>> mapFunction) {
+        if (mapFunction == null) {
+            throw new NullPointerException("Cannot flatMap with a null function");
+        }
+        return then(PipelineCompiler.FLAT_MAP, mapFunction);
+    }
+
+    /**
+     * Runs the pipeline, applying a closure to every element it produces
+     *
+     * @param closure the closure to apply
+     * @throws NullPointerException if closure is null
+     */
+    public void each(Closure<? super T> closure) {
+        if (closure == null) {
+            throw new NullPointerException("Cannot apply a null closure");
+        }
+        run(closure);
+    }
+
+    /**
+     * Runs the pipeline, applying a function across the elements it produces and accumulating a value
+     *
+     * @param initialValue the initial value to use for the fold
+     * @param foldFunction the function to use for the fold
+     * @return the result of the fold
+     * @throws NullPointerException if foldFunction is null
+     */
+    public <U> U fold(U initialValue, final Function2<? super U, ? super T, ? extends U> foldFunction) {
+        if (foldFunction == null) {
+            throw new NullPointerException("Cannot fold with a null function");
+        }
+        class ChangingRef {
+            U ref;
+
+            public ChangingRef(U ref) {
+                this.ref = ref;
+            }
+        }
+        final ChangingRef accumulator = new ChangingRef(initialValue);
+        run(new Closure<T>() {
+            @Override
+            public void apply(T it) {
+                accumulator.ref = foldFunction.apply(accumulator.ref, it);
+            }
+        });
+        return accumulator.ref;
+    }
+
+    /**
+     * Runs the pipeline, collecting the elements it produces
+     *
+     * @return an ArrayList containing the elements produced by the pipeline
+     */
+    public ArrayList<T> toArrayList() {
+        final ArrayList<T> result = new ArrayList<>();
+        run(new Closure<T>() {
+            @Override
+            public void apply(T it) {
+                result.add(it);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs the pipeline, collecting the elements it produces in a Futile
+     *
+     * @return a Futile containing the elements produced by the pipeline
+     */
+    public Futile<T> toFutile() {
+        return Futile.from(toArrayList());
+    }
+}
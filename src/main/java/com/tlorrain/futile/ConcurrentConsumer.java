@@ -0,0 +1,186 @@
+package com.tlorrain.futile;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Consumes a single, non splittable iterator from several threads. Workers pull batches of elements from the shared
+ * iterator, only holding its lock while copying a batch out of it, and split each batch into halves that idle
+ * workers of the pool can steal.
+ */
+final class ConcurrentConsumer<T> {
+
+    private final Iterator<T> iterator;
+    private final int threads;
+    private final int batchSize;
+    private final int leafSize;
+    private final List<Object[]> results;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param collectResults whether the results of the applied function should be kept, in iteration order
+     */
+    ConcurrentConsumer(Iterable<T> iterable, int threads, int batchSize, boolean collectResults) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException(String.format("Expected a positive number of threads but got %d", threads));
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(String.format("Expected a positive batch size but got %d", batchSize));
+        }
+        this.iterator = iterable.iterator();
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.leafSize = Math.max(1, batchSize / threads);
+        this.results = collectResults ? new ArrayList<Object[]>() : null;
+    }
+
+    /**
+     * Applies a function to every element of the iterator, returning its results in iteration order if they were
+     * collected, null otherwise
+     */
+    <U> List<U> run(final Function1<? super T, ? extends U> function) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    List<PullTask<U>> workers = new ArrayList<>();
+                    for (int i = 0; i < threads; i++) {
+                        workers.add(new PullTask<>(function));
+                    }
+                    invokeAll(workers);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            // the pool rethrows a copy of the exception, the original one is thrown instead
+            Throwable original = failure.get();
+            if (original instanceof RuntimeException) {
+                throw (RuntimeException) original;
+            }
+            if (original instanceof Error) {
+                throw (Error) original;
+            }
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+        return results == null ? null : this.<U>flattenResults();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <U> List<U> flattenResults() {
+        int size = 0;
+        for (Object[] batch : results) {
+            size += batch.length;
+        }
+        List<U> flattened = new ArrayList<>(size);
+        for (Object[] batch : results) {
+            for (Object result : batch) {
+                flattened.add((U) result);
+            }
+        }
+        return flattened;
+    }
+
+    /**
+     * Records the first failure of a worker, stopping the others
+     */
+    private void fail(Throwable throwable) {
+        failure.compareAndSet(null, throwable);
+    }
+
+    /**
+     * Copies the next batch out of the shared iterator. The result slots of the batch are registered under the same
+     * lock, which keeps them in iteration order.
+     *
+     * @return the next batch, or null if the iterator is exhausted or another worker failed
+     */
+    private synchronized Batch nextBatch() {
+        if (failure.get() != null || !iterator.hasNext()) {
+            return null;
+        }
+        List<T> elements = new ArrayList<>(batchSize);
+        while (elements.size() < batchSize && iterator.hasNext()) {
+            elements.add(iterator.next());
+        }
+        Object[] batchResults = null;
+        if (results != null) {
+            batchResults = new Object[elements.size()];
+            results.add(batchResults);
+        }
+        return new Batch(elements, batchResults);
+    }
+
+    private class Batch {
+        private final List<T> elements;
+        private final Object[] results;
+
+        Batch(List<T> elements, Object[] results) {
+            this.elements = elements;
+            this.results = results;
+        }
+    }
+
+    private class PullTask<U> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Function1<? super T, ? extends U> function;
+
+        PullTask(Function1<? super T, ? extends U> function) {
+            this.function = function;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                Batch batch;
+                while ((batch = nextBatch()) != null) {
+                    new RangeTask<>(batch, 0, batch.elements.size(), function).compute();
+                }
+            } catch (RuntimeException | Error e) {
+                fail(e);
+                throw e;
+            }
+        }
+    }
+
+    private class RangeTask<U> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Batch batch;
+        private final int from;
+        private final int to;
+        private final Function1<? super T, ? extends U> function;
+
+        RangeTask(Batch batch, int from, int to, Function1<? super T, ? extends U> function) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+            this.function = function;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize) {
+                try {
+                    for (int i = from; i < to && failure.get() == null; i++) {
+                        U result = function.apply(batch.elements.get(i));
+                        if (batch.results != null) {
+                            batch.results[i] = result;
+                        }
+                    }
+                } catch (RuntimeException | Error e) {
+                    fail(e);
+                    throw e;
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask<>(batch, from, middle, function), new RangeTask<>(batch, middle, to, function));
+            }
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.tlorrain.futile;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -98,6 +102,196 @@ public class Futile<T> implements Iterable<T> {
         return from(groupBy(this, groupByFunction).entrySet());
     }
 
+    /**
+     * Applies a closure to every element in this Futile, using several threads. See
+     * {@link #eachConcurrently(Iterable, Closure, int, int)}
+     *
+     * @param closure   the closure to apply
+     * @param threads   the number of threads to use
+     * @param batchSize the number of elements pulled from this Futile at once by a thread
+     * @throws NullPointerException     if closure is null
+     * @throws IllegalArgumentException if threads or batchSize is not positive
+     */
+    public void eachConcurrently(Closure<? super T> closure, int threads, int batchSize) {
+        eachConcurrently(this, closure, threads, batchSize);
+    }
+
+    /**
+     * Applies a function to every element of this Futile using several threads, returning a Futile of the results in
+     * the order of this Futile. See {@link #mapConcurrently(Iterable, Function1, int, int)}
+     *
+     * @param mapFunction the function to apply on every element of the Futile
+     * @param threads     the number of threads to use
+     * @param batchSize   the number of elements pulled from this Futile at once by a thread
+     * @return a Futile containing the result of mapFunction for every element of this Futile
+     * @throws NullPointerException     if mapFunction is null
+     * @throws IllegalArgumentException if threads or batchSize is not positive
+     */
+    public <U> Futile<U> mapConcurrently(Function1<? super T, ? extends U> mapFunction, int threads, int batchSize) {
+        return from(mapConcurrently(this, mapFunction, threads, batchSize));
+    }
+
+    /**
+     * Writes the elements of this Futile to a file in a compact binary format, see {@link #open(Path, Codec)}
+     *
+     * @param path  the file to write, replaced if it already exists
+     * @param codec the codec to use to encode the elements
+     * @throws IOException          if the file cannot be written, or if it would exceed 2GB
+     * @throws NullPointerException if one of the arguments is null
+     */
+    public void persist(Path path, Codec<? super T> codec) throws IOException {
+        persist(this, path, codec);
+    }
+
+    /**
+     * Slides a window over this Futile, returning a lazy Futile of the windows. See
+     * {@link #window(Iterable, int, int)}. Unlike the views returned by the static method, every window is a copy,
+     * so that the operations of the returned Futile can keep windows across elements.
+     *
+     * @param size the number of elements in a window
+     * @param step the number of elements the window moves by
+     * @return a Futile of the windows
+     * @throws IllegalArgumentException if size or step is not positive
+     */
+    public Futile<List<T>> window(int size, int step) {
+        return from(Windows.windows(this, size, step, true));
+    }
+
+    /**
+     * Folds every window of a given size sliding over this Futile one element at a time, returning a lazy Futile of
+     * the results. See {@link #slidingFold(Iterable, int, Object, Function2, Function2)}
+     *
+     * @param size           the number of elements in a window
+     * @param initialValue   the initial value to use for the fold of every window
+     * @param addFunction    the function adding an element to the accumulated value
+     * @param removeFunction the function removing an element from the accumulated value, may be null
+     * @return a Futile containing the result of the fold of every window
+     * @throws IllegalArgumentException if size is not positive
+     * @throws NullPointerException     if addFunction is null
+     */
+    public <U> Futile<U> slidingFold(int size, U initialValue, Function2<? super U, ? super T, ? extends U> addFunction, Function2<? super U, ? super T, ? extends U> removeFunction) {
+        return from(slidingFold(this, size, initialValue, addFunction, removeFunction));
+    }
+
+    /**
+     * Computes the count, sum, min, max, mean and variance of the elements of this Futile in a single pass, see
+     * {@link #summarize(Iterable)}
+     *
+     * @return the summary of the elements
+     * @throws ClassCastException   if an element is not a Number
+     * @throws NullPointerException if this Futile contains null
+     */
+    @SuppressWarnings("unchecked")
+    public NumericSummary summarize() {
+        return summarize((Iterable<Number>) this);
+    }
+
+    /**
+     * Counts the elements of this Futile falling in each of a fixed number of equal width buckets, see
+     * {@link #histogram(Iterable, double, double, int)}
+     *
+     * @param lowerBound the lower bound of the first bucket, inclusive
+     * @param upperBound the upper bound of the last bucket, inclusive
+     * @param buckets    the number of buckets
+     * @return the count of elements in each bucket
+     * @throws ClassCastException       if an element is not a Number
+     * @throws NullPointerException     if this Futile contains null
+     * @throws IllegalArgumentException if buckets is not positive or if lowerBound is not lower than upperBound
+     */
+    @SuppressWarnings("unchecked")
+    public long[] histogram(double lowerBound, double upperBound, int buckets) {
+        return histogram((Iterable<Number>) this, lowerBound, upperBound, buckets);
+    }
+
+    /**
+     * Takes a uniform random sample of this Futile, see {@link #sample(Iterable, int)}
+     *
+     * @param size the maximum number of elements in the sample
+     * @return a reservoir holding the sample
+     * @throws IllegalArgumentException if size is negative
+     */
+    public Reservoir<T> sample(int size) {
+        return sample(this, size);
+    }
+
+    /**
+     * Estimates the number of distinct elements of this Futile, see {@link #approximateDistinct(Iterable, int)}
+     *
+     * @param precision the precision of the sketch, between 4 and 18
+     * @return a sketch of the distinct elements of this Futile
+     * @throws IllegalArgumentException if precision is out of range
+     */
+    public HyperLogLog approximateDistinct(int precision) {
+        return approximateDistinct(this, precision);
+    }
+
+    /**
+     * Estimates the number of distinct elements of this Futile, see
+     * {@link #approximateDistinct(Iterable, int, Function1)}
+     *
+     * @param precision the precision of the sketch, between 4 and 18
+     * @param hasher    the function hashing the elements, uniformly over 64 bits
+     * @return a sketch of the distinct elements of this Futile
+     * @throws NullPointerException     if hasher is null or returns null
+     * @throws IllegalArgumentException if precision is out of range
+     */
+    public HyperLogLog approximateDistinct(int precision, Function1<? super T, Long> hasher) {
+        return approximateDistinct(this, precision, hasher);
+    }
+
+    /**
+     * Builds a Bloom filter of the elements of this Futile, see {@link #bloomFilter(Iterable, long, double)}
+     *
+     * @param expectedInsertions       the number of elements expected in this Futile
+     * @param falsePositiveProbability the wanted probability of a false positive
+     * @return a Bloom filter containing the elements of this Futile
+     * @throws IllegalArgumentException if expectedInsertions is not positive or falsePositiveProbability is not
+     *                                  strictly between 0 and 1
+     */
+    public BloomFilter<T> bloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        return bloomFilter(this, expectedInsertions, falsePositiveProbability);
+    }
+
+    /**
+     * Builds a Bloom filter of the elements of this Futile, see {@link #bloomFilter(Iterable, long, double, Function1)}
+     *
+     * @param expectedInsertions       the number of elements expected in this Futile
+     * @param falsePositiveProbability the wanted probability of a false positive
+     * @param hasher                   the function hashing the elements, uniformly over 64 bits
+     * @return a Bloom filter containing the elements of this Futile
+     * @throws NullPointerException     if hasher is null or returns null
+     * @throws IllegalArgumentException if expectedInsertions is not positive or falsePositiveProbability is not
+     *                                  strictly between 0 and 1
+     */
+    public BloomFilter<T> bloomFilter(long expectedInsertions, double falsePositiveProbability, Function1<? super T, Long> hasher) {
+        return bloomFilter(this, expectedInsertions, falsePositiveProbability, hasher);
+    }
+
+    /**
+     * Starts a compiled pipeline over this Futile. A class running the stages added to the pipeline in a single loop
+     * over this Futile is generated for the pipeline when it first runs, instead of each stage producing an
+     * intermediate list, see {@link CompiledPipeline}.
+     *
+     * @return a pipeline producing the elements of this Futile
+     */
+    public CompiledPipeline<T> compile() {
+        return CompiledPipeline.from(this);
+    }
+
+    /**
+     * Runs several aggregations over this Futile in a single traversal, see
+     * {@link #aggregateAll(Iterable, Aggregation[])}
+     *
+     * @param aggregations the aggregations to run
+     * @return the results of the aggregations
+     * @throws NullPointerException if one of the aggregations is null
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs") // the static overload only reads the array
+    public final Aggregation.Results aggregateAll(Aggregation<? super T, ?>... aggregations) {
+        return aggregateAll(this, aggregations);
+    }
+
     /**
      * Converts this Futile to an Iterator
      *
@@ -178,6 +372,46 @@ public class Futile<T> implements Iterable<T> {
         return new Futile<>(iterable);
     }
 
+    /**
+     * Lazily merges iterables sorted according to a comparator into a sorted Futile. Only the next element of every
+     * iterable is held in memory, and taking an element costs O(log k) for k iterables, so elements are available as
+     * soon as every iterable produced its first one. Equal elements come out in the order of their iterables.
+     *
+     * @param comparator the comparator the iterables are sorted with
+     * @param iterables  the sorted iterables to merge
+     * @return a sorted Futile of all the elements of the iterables
+     * @throws NullPointerException if the comparator or one of the iterables is null
+     */
+    @SafeVarargs
+    public static <T> Futile<T> mergeSorted(Comparator<? super T> comparator, Iterable<? extends T>... iterables) {
+        // the iterables are copied rather than passed on, so that the generic array never escapes
+        List<Iterable<? extends T>> sources = new ArrayList<>(iterables.length);
+        for (Iterable<? extends T> iterable : iterables) {
+            sources.add(iterable);
+        }
+        return from(new SortedMerge<T>(comparator, false, sources));
+    }
+
+    /**
+     * Lazily merges iterables sorted according to a comparator into a sorted Futile, see
+     * {@link #mergeSorted(Comparator, Iterable[])}. When distinct is true, only the first of several elements equal
+     * according to the comparator is kept.
+     *
+     * @param comparator the comparator the iterables are sorted with
+     * @param distinct   whether equal elements should only be kept once
+     * @param iterables  the sorted iterables to merge
+     * @return a sorted Futile of the elements of the iterables
+     * @throws NullPointerException if the comparator or one of the iterables is null
+     */
+    @SafeVarargs
+    public static <T> Futile<T> mergeSorted(Comparator<? super T> comparator, boolean distinct, Iterable<? extends T>... iterables) {
+        List<Iterable<? extends T>> sources = new ArrayList<>(iterables.length);
+        for (Iterable<? extends T> iterable : iterables) {
+            sources.add(iterable);
+        }
+        return from(new SortedMerge<T>(comparator, distinct, sources));
+    }
+
     /**
      * Applies a closure to every element of an iterable
      *
@@ -191,6 +425,53 @@ public class Futile<T> implements Iterable<T> {
         }
     }
 
+    /**
+     * Applies a closure to every element of an iterable, using several threads. The iterable is iterated only once,
+     * its iterator being shared by the threads : each thread pulls a batch of elements from it, then applies the
+     * closure to them while the other threads pull their own batches. Batches are split so that idle threads can
+     * steal part of the work of busy ones. The closure is therefore called concurrently and in no particular order.
+     * If the closure throws, the remaining batches are not processed and the first exception thrown is rethrown as
+     * is.
+     *
+     * @param iterable  the iterable on which we should operate
+     * @param closure   the closure to apply
+     * @param threads   the number of threads to use
+     * @param batchSize the number of elements pulled from the iterable at once by a thread
+     * @throws NullPointerException     if one of the arguments is null
+     * @throws IllegalArgumentException if threads or batchSize is not positive
+     */
+    public static <T> void eachConcurrently(Iterable<T> iterable, final Closure<? super T> closure, int threads, int batchSize) {
+        if (closure == null) {
+            throw new NullPointerException("Cannot apply a null closure");
+        }
+        new ConcurrentConsumer<>(iterable, threads, batchSize, false).run(new Function1<T, Void>() {
+            @Override
+            public Void apply(T it) {
+                closure.apply(it);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Applies a function to every element of an iterable using several threads, returning a list of the results in
+     * the order of the iterable. The iterable is consumed as in {@link #eachConcurrently(Iterable, Closure, int, int)}
+     *
+     * @param iterable    the iterable on which we should operate
+     * @param mapFunction the function to apply on every element of the iterable
+     * @param threads     the number of threads to use
+     * @param batchSize   the number of elements pulled from the iterable at once by a thread
+     * @return a list containing the result of mapFunction for every element of iterable
+     * @throws NullPointerException     if one of the arguments is null
+     * @throws IllegalArgumentException if threads or batchSize is not positive
+     */
+    public static <T, U> List<U> mapConcurrently(Iterable<T> iterable, Function1<? super T, ? extends U> mapFunction, int threads, int batchSize) {
+        if (mapFunction == null) {
+            throw new NullPointerException("Cannot apply a null function");
+        }
+        return new ConcurrentConsumer<>(iterable, threads, batchSize, true).run(mapFunction);
+    }
+
     /**
      * Filters an iterable based on a predicate
      *
@@ -277,6 +558,47 @@ public class Futile<T> implements Iterable<T> {
         return accumulator.ref;
     }
 
+    /**
+     * Slides a window over an iterable, returning a lazy iterable of the windows. The first window holds the first
+     * size elements, every following window starts step elements after the previous one : windows overlap if step is
+     * lower than size, are tumbling if step equals size and leave elements out if step is greater than size. Trailing
+     * elements not filling a whole window are dropped.
+     * <p>
+     * Windows are read only views over a ring buffer holding the last size elements read, so that nothing is copied
+     * and the memory used does not depend on the size of the iterable. A view is only valid until the next window is
+     * read : copy it to keep it.
+     *
+     * @param iterable the iterable on which we should operate
+     * @param size     the number of elements in a window
+     * @param step     the number of elements the window moves by
+     * @return an iterable of views of the windows
+     * @throws NullPointerException     if the iterable is null
+     * @throws IllegalArgumentException if size or step is not positive
+     */
+    public static <T> Iterable<List<T>> window(Iterable<T> iterable, int size, int step) {
+        return Windows.windows(iterable, size, step, false);
+    }
+
+    /**
+     * Folds every window of a given size sliding over an iterable one element at a time, returning a lazy iterable of
+     * the results. When a removeFunction is given, the accumulated value is updated by adding the element entering
+     * the window and removing the one leaving it, so that the whole iterable is folded in linear time whatever the
+     * size of the window. Otherwise every window is folded again from initialValue. As with
+     * {@link #fold(Iterable, Object, Function2)}, initialValue is shared and should not be mutated.
+     *
+     * @param iterable       the iterable to fold over
+     * @param size           the number of elements in a window
+     * @param initialValue   the initial value to use for the fold of every window
+     * @param addFunction    the function adding an element to the accumulated value
+     * @param removeFunction the inverse of addFunction, removing an element from the accumulated value, may be null
+     * @return an iterable containing the result of the fold of every window
+     * @throws IllegalArgumentException if size is not positive
+     * @throws NullPointerException     if the iterable or addFunction is null
+     */
+    public static <T, U> Iterable<U> slidingFold(Iterable<T> iterable, int size, U initialValue, Function2<? super U, ? super T, ? extends U> addFunction, Function2<? super U, ? super T, ? extends U> removeFunction) {
+        return Windows.slidingFold(iterable, size, initialValue, addFunction, removeFunction);
+    }
+
     /**
      * Iterate over two iterables, applying a function to elements taken in pairs and returning a list containing the
      * results
@@ -303,6 +625,67 @@ public class Futile<T> implements Iterable<T> {
         return result;
     }
 
+    /**
+     * Writes the elements of an iterable to a file in a compact binary format. Elements encoded by a codec with a fixed
+     * size are stored densely one after the other, other elements are followed by an index of their offsets.
+     * <p>
+     * The elements are written to a temporary file next to the target, which then atomically replaces it. Futiles
+     * previously opened from the target keep reading the elements they were opened with.
+     *
+     * @param iterable the iterable to persist
+     * @param path     the file to write, replaced if it already exists
+     * @param codec    the codec to use to encode the elements
+     * @throws IOException              if the file cannot be written, or if it would exceed 2GB
+     * @throws IllegalArgumentException if the codec declares a fixed size but encodes an element with another size
+     * @throws NullPointerException     if one of the arguments is null
+     */
+    public static <T> void persist(Iterable<T> iterable, Path path, Codec<? super T> codec) throws IOException {
+        PersistedList.write(iterable, path, codec);
+    }
+
+    /**
+     * Opens a file written by {@link #persist(Iterable, Path, Codec)}. The file is memory mapped and its elements are
+     * only decoded when they are accessed, so opening it does not depend on its size. The returned Futile is backed by
+     * a random access list, decoding the element again on every access.
+     *
+     * @param path  the file to open
+     * @param codec the codec the file was written with
+     * @return a Futile of the persisted elements
+     * @throws IOException              if the file cannot be read, is not a persisted Futile or exceeds 2GB
+     * @throws IllegalArgumentException if the file was written by a codec of another fixed size
+     * @throws NullPointerException     if one of the arguments is null
+     */
+    public static <T> Futile<T> open(Path path, Codec<T> codec) throws IOException {
+        return from(PersistedList.open(path, codec));
+    }
+
+    /**
+     * Runs several aggregations over an iterable in a single traversal, so that an expensive or read once iterable is
+     * only iterated once. Every element is passed to all the aggregations before the next one is read.
+     *
+     * @param iterable     the iterable to aggregate
+     * @param aggregations the aggregations to run
+     * @return the results of the aggregations
+     * @throws NullPointerException if the iterable or one of the aggregations is null
+     */
+    @SafeVarargs
+    public static <T> Aggregation.Results aggregateAll(Iterable<T> iterable, Aggregation<? super T, ?>... aggregations) {
+        List<Aggregation.Accumulator<? super T, ?>> accumulators = new ArrayList<>(aggregations.length);
+        for (Aggregation<? super T, ?> aggregation : aggregations) {
+            accumulators.add(aggregation.start());
+        }
+        for (T t : iterable) {
+            for (Aggregation.Accumulator<? super T, ?> accumulator : accumulators) {
+                accumulator.add(t);
+            }
+        }
+        Map<Aggregation<?, ?>, Object> results = new IdentityHashMap<>();
+        for (int i = 0; i < aggregations.length; i++) {
+            results.put(aggregations[i], accumulators.get(i).result());
+        }
+        return new Aggregation.Results(results);
+    }
+
     /**
      * Get only element of an iterable
      *
@@ -347,6 +730,419 @@ public class Futile<T> implements Iterable<T> {
         });
     }
 
+    /**
+     * Sums an array of doubles
+     *
+     * @param values the values to sum
+     * @return the sum of the values, 0 if the array is empty
+     * @throws NullPointerException if values is null
+     */
+    public static double sum(double[] values) {
+        return NumericKernels.sum(values);
+    }
+
+    /**
+     * Get the smallest value of an array of doubles
+     *
+     * @param values the values to search
+     * @return the smallest value, NaN if one of the values is NaN
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if values is empty
+     */
+    public static double min(double[] values) {
+        checkNotEmpty(values.length, "min");
+        return NumericKernels.min(values);
+    }
+
+    /**
+     * Get the largest value of an array of doubles
+     *
+     * @param values the values to search
+     * @return the largest value, NaN if one of the values is NaN
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if values is empty
+     */
+    public static double max(double[] values) {
+        checkNotEmpty(values.length, "max");
+        return NumericKernels.max(values);
+    }
+
+    /**
+     * Computes the arithmetic mean of an array of doubles
+     *
+     * @param values the values to average
+     * @return the mean of the values
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if values is empty
+     */
+    public static double average(double[] values) {
+        checkNotEmpty(values.length, "average");
+        return NumericKernels.sum(values) / values.length;
+    }
+
+    /**
+     * Computes the population variance of an array of doubles
+     *
+     * @param values the values to use
+     * @return the variance of the values
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if values is empty
+     */
+    public static double variance(double[] values) {
+        checkNotEmpty(values.length, "variance");
+        double mean = NumericKernels.sum(values) / values.length;
+        return NumericKernels.sumOfSquaredDeviations(values, mean) / values.length;
+    }
+
+    /**
+     * Counts the values of an array falling in each of a fixed number of equal width buckets spanning
+     * [lowerBound, upperBound]. Values outside of this range, and NaNs, are not counted.
+     *
+     * @param values     the values to count
+     * @param lowerBound the lower bound of the first bucket, inclusive
+     * @param upperBound the upper bound of the last bucket, inclusive
+     * @param buckets    the number of buckets
+     * @return the count of values in each bucket
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if buckets is not positive or if lowerBound is not lower than upperBound
+     */
+    public static long[] histogram(double[] values, double lowerBound, double upperBound, int buckets) {
+        NumericKernels.checkHistogramBounds(lowerBound, upperBound, buckets);
+        long[] counts = new long[buckets];
+        NumericKernels.histogram(values, lowerBound, upperBound, counts);
+        return counts;
+    }
+
+    /**
+     * Sums an array of longs. The sum overflows silently as any long addition, while {@link #average(long[])} and
+     * {@link #variance(long[])} are computed with doubles and do not overflow
+     *
+     * @param values the values to sum
+     * @return the sum of the values, 0 if the array is empty
+     * @throws NullPointerException if values is null
+     */
+    public static long sum(long[] values) {
+        return NumericKernels.sum(values);
+    }
+
+    /**
+     * Get the smallest value of an array of longs
+     *
+     * @param values the values to search
+     * @return the smallest value
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if values is empty
+     */
+    public static long min(long[] values) {
+        checkNotEmpty(values.length, "min");
+        return NumericKernels.min(values);
+    }
+
+    /**
+     * Get the largest value of an array of longs
+     *
+     * @param values the values to search
+     * @return the largest value
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if values is empty
+     */
+    public static long max(long[] values) {
+        checkNotEmpty(values.length, "max");
+        return NumericKernels.max(values);
+    }
+
+    /**
+     * Computes the arithmetic mean of an array of longs
+     *
+     * @param values the values to average
+     * @return the mean of the values
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if values is empty
+     */
+    public static double average(long[] values) {
+        checkNotEmpty(values.length, "average");
+        return NumericKernels.doubleSum(values) / values.length;
+    }
+
+    /**
+     * Computes the population variance of an array of longs
+     *
+     * @param values the values to use
+     * @return the variance of the values
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if values is empty
+     */
+    public static double variance(long[] values) {
+        checkNotEmpty(values.length, "variance");
+        double mean = NumericKernels.doubleSum(values) / values.length;
+        return NumericKernels.sumOfSquaredDeviations(values, mean) / values.length;
+    }
+
+    /**
+     * Counts the values of an array falling in each of a fixed number of equal width buckets, see
+     * {@link #histogram(double[], double, double, int)}
+     *
+     * @param values     the values to count
+     * @param lowerBound the lower bound of the first bucket, inclusive
+     * @param upperBound the upper bound of the last bucket, inclusive
+     * @param buckets    the number of buckets
+     * @return the count of values in each bucket
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if buckets is not positive or if lowerBound is not lower than upperBound
+     */
+    public static long[] histogram(long[] values, double lowerBound, double upperBound, int buckets) {
+        NumericKernels.checkHistogramBounds(lowerBound, upperBound, buckets);
+        long[] counts = new long[buckets];
+        NumericKernels.histogram(values, lowerBound, upperBound, counts);
+        return counts;
+    }
+
+    /**
+     * Sums an array of ints, as a long which cannot overflow
+     *
+     * @param values the values to sum
+     * @return the sum of the values, 0 if the array is empty
+     * @throws NullPointerException if values is null
+     */
+    public static long sum(int[] values) {
+        return NumericKernels.sum(values);
+    }
+
+    /**
+     * Get the smallest value of an array of ints
+     *
+     * @param values the values to search
+     * @return the smallest value
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if values is empty
+     */
+    public static int min(int[] values) {
+        checkNotEmpty(values.length, "min");
+        return NumericKernels.min(values);
+    }
+
+    /**
+     * Get the largest value of an array of ints
+     *
+     * @param values the values to search
+     * @return the largest value
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if values is empty
+     */
+    public static int max(int[] values) {
+        checkNotEmpty(values.length, "max");
+        return NumericKernels.max(values);
+    }
+
+    /**
+     * Computes the arithmetic mean of an array of ints
+     *
+     * @param values the values to average
+     * @return the mean of the values
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if values is empty
+     */
+    public static double average(int[] values) {
+        checkNotEmpty(values.length, "average");
+        return (double) NumericKernels.sum(values) / values.length;
+    }
+
+    /**
+     * Computes the population variance of an array of ints
+     *
+     * @param values the values to use
+     * @return the variance of the values
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if values is empty
+     */
+    public static double variance(int[] values) {
+        checkNotEmpty(values.length, "variance");
+        double mean = (double) NumericKernels.sum(values) / values.length;
+        return NumericKernels.sumOfSquaredDeviations(values, mean) / values.length;
+    }
+
+    /**
+     * Counts the values of an array falling in each of a fixed number of equal width buckets, see
+     * {@link #histogram(double[], double, double, int)}
+     *
+     * @param values     the values to count
+     * @param lowerBound the lower bound of the first bucket, inclusive
+     * @param upperBound the upper bound of the last bucket, inclusive
+     * @param buckets    the number of buckets
+     * @return the count of values in each bucket
+     * @throws NullPointerException     if values is null
+     * @throws IllegalArgumentException if buckets is not positive or if lowerBound is not lower than upperBound
+     */
+    public static long[] histogram(int[] values, double lowerBound, double upperBound, int buckets) {
+        NumericKernels.checkHistogramBounds(lowerBound, upperBound, buckets);
+        long[] counts = new long[buckets];
+        NumericKernels.histogram(values, lowerBound, upperBound, counts);
+        return counts;
+    }
+
+    /**
+     * Computes the count, sum, min, max, mean and variance of an iterable of numbers in a single pass
+     *
+     * @param iterable the numbers to summarize
+     * @return the summary of the numbers
+     * @throws NullPointerException if the iterable is null or contains null
+     */
+    public static NumericSummary summarize(Iterable<? extends Number> iterable) {
+        NumericSummary summary = new NumericSummary();
+        for (Number number : iterable) {
+            summary.add(number.doubleValue());
+        }
+        return summary;
+    }
+
+    /**
+     * Counts the numbers of an iterable falling in each of a fixed number of equal width buckets spanning
+     * [lowerBound, upperBound], in a single pass. Values outside of this range, and NaNs, are not counted.
+     *
+     * @param iterable   the numbers to count
+     * @param lowerBound the lower bound of the first bucket, inclusive
+     * @param upperBound the upper bound of the last bucket, inclusive
+     * @param buckets    the number of buckets
+     * @return the count of numbers in each bucket
+     * @throws NullPointerException     if the iterable is null or contains null
+     * @throws IllegalArgumentException if buckets is not positive or if lowerBound is not lower than upperBound
+     */
+    public static long[] histogram(Iterable<? extends Number> iterable, double lowerBound, double upperBound, int buckets) {
+        NumericKernels.checkHistogramBounds(lowerBound, upperBound, buckets);
+        long[] counts = new long[buckets];
+        double scale = buckets / (upperBound - lowerBound);
+        for (Number number : iterable) {
+            double value = number.doubleValue();
+            if (value >= lowerBound && value <= upperBound) {
+                counts[NumericKernels.bucket(value, lowerBound, scale, buckets)]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Takes a uniform random sample of an iterable in a single pass, using memory proportional to the size of the
+     * sample only. Reservoirs of different iterables can be merged.
+     *
+     * @param iterable the iterable to sample
+     * @param size     the maximum number of elements in the sample
+     * @return a reservoir holding the sample
+     * @throws NullPointerException     if the iterable is null
+     * @throws IllegalArgumentException if size is negative
+     */
+    public static <T> Reservoir<T> sample(Iterable<T> iterable, int size) {
+        Reservoir<T> reservoir = new Reservoir<>(size);
+        for (T t : iterable) {
+            reservoir.add(t);
+        }
+        return reservoir;
+    }
+
+    /**
+     * Estimates the number of distinct elements of an iterable in a single pass, using 2^precision bytes whatever
+     * the size of the iterable. Sketches of different iterables can be merged. Elements are hashed from their
+     * hashCode, which limits the accuracy beyond about 10^8 distinct elements, see
+     * {@link #approximateDistinct(Iterable, int, Function1)} to hash them over 64 bits.
+     *
+     * @param iterable  the iterable to count
+     * @param precision the precision of the sketch, between 4 and 18
+     * @return a sketch of the distinct elements of the iterable
+     * @throws NullPointerException     if the iterable is null
+     * @throws IllegalArgumentException if precision is out of range
+     */
+    public static HyperLogLog approximateDistinct(Iterable<?> iterable, int precision) {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for (Object value : iterable) {
+            sketch.add(value);
+        }
+        return sketch;
+    }
+
+    /**
+     * Estimates the number of distinct elements of an iterable in a single pass, as
+     * {@link #approximateDistinct(Iterable, int)}, hashing the elements with a given function
+     *
+     * @param iterable  the iterable to count
+     * @param precision the precision of the sketch, between 4 and 18
+     * @param hasher    the function hashing the elements, uniformly over 64 bits
+     * @return a sketch of the distinct elements of the iterable
+     * @throws NullPointerException     if the iterable or hasher is null, or if hasher returns null
+     * @throws IllegalArgumentException if precision is out of range
+     */
+    public static <T> HyperLogLog approximateDistinct(Iterable<T> iterable, int precision, Function1<? super T, Long> hasher) {
+        if (hasher == null) {
+            throw new NullPointerException("Cannot hash with a null hasher");
+        }
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for (T t : iterable) {
+            sketch.addHash(hasher.apply(t));
+        }
+        return sketch;
+    }
+
+    /**
+     * Estimates the quantiles of an iterable of numbers in a single pass, keeping about 3k numbers whatever the size
+     * of the iterable. Sketches of different iterables can be merged.
+     *
+     * @param iterable the numbers to use
+     * @param k        the accuracy of the sketch, at least 8
+     * @return a sketch of the distribution of the numbers
+     * @throws NullPointerException     if the iterable is null or contains null
+     * @throws IllegalArgumentException if k is lower than 8
+     */
+    public static QuantileSketch approximateQuantiles(Iterable<? extends Number> iterable, int k) {
+        QuantileSketch sketch = new QuantileSketch(k);
+        for (Number number : iterable) {
+            sketch.add(number.doubleValue());
+        }
+        return sketch;
+    }
+
+    /**
+     * Builds a Bloom filter of the elements of an iterable in a single pass, its size depending only on the expected
+     * number of elements and the wanted probability of false positives. Filters of different iterables built with
+     * the same parameters can be merged. Elements are hashed from their hashCode, see
+     * {@link #bloomFilter(Iterable, long, double, Function1)} to hash them over 64 bits.
+     *
+     * @param iterable                 the iterable to use
+     * @param expectedInsertions       the number of elements expected in the iterable
+     * @param falsePositiveProbability the wanted probability of a false positive
+     * @return a Bloom filter containing the elements of the iterable
+     * @throws NullPointerException     if the iterable is null
+     * @throws IllegalArgumentException if expectedInsertions is not positive or falsePositiveProbability is not
+     *                                  strictly between 0 and 1
+     */
+    public static <T> BloomFilter<T> bloomFilter(Iterable<T> iterable, long expectedInsertions, double falsePositiveProbability) {
+        return bloomFilter(iterable, expectedInsertions, falsePositiveProbability, Hashing.HASH_CODE);
+    }
+
+    /**
+     * Builds a Bloom filter of the elements of an iterable in a single pass, as
+     * {@link #bloomFilter(Iterable, long, double)}, hashing the elements with a given function
+     *
+     * @param iterable                 the iterable to use
+     * @param expectedInsertions       the number of elements expected in the iterable
+     * @param falsePositiveProbability the wanted probability of a false positive
+     * @param hasher                   the function hashing the elements, uniformly over 64 bits
+     * @return a Bloom filter containing the elements of the iterable
+     * @throws NullPointerException     if the iterable or hasher is null, or if hasher returns null
+     * @throws IllegalArgumentException if expectedInsertions is not positive or falsePositiveProbability is not
+     *                                  strictly between 0 and 1
+     */
+    public static <T> BloomFilter<T> bloomFilter(Iterable<T> iterable, long expectedInsertions, double falsePositiveProbability, Function1<? super T, Long> hasher) {
+        BloomFilter<T> filter = new BloomFilter<>(expectedInsertions, falsePositiveProbability, hasher);
+        for (T t : iterable) {
+            filter.add(t);
+        }
+        return filter;
+    }
+
+    private static void checkNotEmpty(int length, String operation) {
+        if (length == 0) {
+            throw new IllegalArgumentException(String.format("Cannot compute the %s of an empty array", operation));
+        }
+    }
+
     private static class AddClosure<U> implements Closure<U> {
         private final List<U> result;
 
@@ -0,0 +1,40 @@
+package com.tlorrain.futile;
+
+import java.util.Objects;
+
+final class Hashing {
+
+    private Hashing() {
+    }
+
+    /**
+     * The default hasher of the sketches, spreading the hashCode of a value over 64 bits
+     */
+    static final Function1<Object, Long> HASH_CODE = new Function1<Object, Long>() {
+        @Override
+        public Long apply(Object it) {
+            return hash64(it);
+        }
+    };
+
+    /**
+     * Spreads the hashCode of a value over 64 bits. The result cannot hold more entropy than the 32 bits hashCode it
+     * is computed from.
+     */
+    static long hash64(Object value) {
+        return mix64(Objects.hashCode(value) + 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Mixes the bits of a long (murmur3 finalizer), a bijection so that distinct longs keep distinct hashes
+     */
+    static long mix64(long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,106 @@
+package com.tlorrain.futile;
+
+/**
+ * Estimates the number of distinct elements of an input in fixed memory (HyperLogLog). A precision p uses 2^p bytes
+ * and gives a standard error of about 1.04 / sqrt(2^p). By default elements are hashed from their hashCode, so
+ * estimates are only meaningful while there are far fewer than 2^32 distinct hash codes : beyond about 10^8 distinct
+ * elements, or for elements whose hashCode collides, add them by a 64 bits hash of their own with
+ * {@link #addHash(long)}. Sketches of the same precision filled from different parts of an input, with the same hash,
+ * can be merged.
+ */
+public final class HyperLogLog {
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * @param precision the number of bits of the hash used to select a register, between 4 and 18
+     * @throws IllegalArgumentException if precision is out of range
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException(String.format("Expected a precision between 4 and 18 but got %d", precision));
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds a value, hashed from its hashCode
+     *
+     * @param value the value to add
+     */
+    public void add(Object value) {
+        addHash(Hashing.hash64(value));
+    }
+
+    /**
+     * Adds a value by its hash, which should be uniformly distributed over the 64 bits
+     *
+     * @param hash the hash of the value to add
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the sentinel bit bounds the rank when all remaining bits are 0
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Merges another sketch in this one, so that this sketch counts the elements added to both of them
+     *
+     * @param other the sketch to merge, left unchanged
+     * @throws IllegalArgumentException if the sketches do not have the same precision
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException(String.format("Cannot merge sketches of precision %d and %d", precision, other.precision));
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct elements added to this sketch
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // linear counting is more accurate for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HyperLogLog{ precision=" + precision + ", estimate=" + estimate() + " }";
+    }
+}
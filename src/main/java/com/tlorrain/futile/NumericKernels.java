@@ -0,0 +1,284 @@
+package com.tlorrain.futile;
+
+/**
+ * Scalar aggregation kernels over primitive arrays. Loops are unrolled by four with independent accumulators, which
+ * breaks the dependency chain on a single accumulator and lets the CPU run several additions or comparisons in
+ * parallel. This is instruction level parallelism, not vectorization : floating point sums must keep their order,
+ * which prevents the JIT from turning them into SIMD reductions.
+ */
+final class NumericKernels {
+
+    private NumericKernels() {
+    }
+
+    static double sum(double[] values) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < values.length; i++) {
+            s0 += values[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static double min(double[] values) {
+        double m0 = values[0], m1 = m0, m2 = m0, m3 = m0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            m0 = Math.min(m0, values[i]);
+            m1 = Math.min(m1, values[i + 1]);
+            m2 = Math.min(m2, values[i + 2]);
+            m3 = Math.min(m3, values[i + 3]);
+        }
+        for (; i < values.length; i++) {
+            m0 = Math.min(m0, values[i]);
+        }
+        return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+    }
+
+    static double max(double[] values) {
+        double m0 = values[0], m1 = m0, m2 = m0, m3 = m0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            m0 = Math.max(m0, values[i]);
+            m1 = Math.max(m1, values[i + 1]);
+            m2 = Math.max(m2, values[i + 2]);
+            m3 = Math.max(m3, values[i + 3]);
+        }
+        for (; i < values.length; i++) {
+            m0 = Math.max(m0, values[i]);
+        }
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+    }
+
+    static double sumOfSquaredDeviations(double[] values, double mean) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            double d0 = values[i] - mean;
+            double d1 = values[i + 1] - mean;
+            double d2 = values[i + 2] - mean;
+            double d3 = values[i + 3] - mean;
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < values.length; i++) {
+            double d = values[i] - mean;
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static long sum(long[] values) {
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < values.length; i++) {
+            s0 += values[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static long sum(int[] values) {
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < values.length; i++) {
+            s0 += values[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Sums longs as doubles, which cannot overflow
+     */
+    static double doubleSum(long[] values) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < values.length; i++) {
+            s0 += values[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static long min(long[] values) {
+        long m0 = values[0], m1 = m0, m2 = m0, m3 = m0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            m0 = Math.min(m0, values[i]);
+            m1 = Math.min(m1, values[i + 1]);
+            m2 = Math.min(m2, values[i + 2]);
+            m3 = Math.min(m3, values[i + 3]);
+        }
+        for (; i < values.length; i++) {
+            m0 = Math.min(m0, values[i]);
+        }
+        return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+    }
+
+    static int min(int[] values) {
+        int m0 = values[0], m1 = m0, m2 = m0, m3 = m0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            m0 = Math.min(m0, values[i]);
+            m1 = Math.min(m1, values[i + 1]);
+            m2 = Math.min(m2, values[i + 2]);
+            m3 = Math.min(m3, values[i + 3]);
+        }
+        for (; i < values.length; i++) {
+            m0 = Math.min(m0, values[i]);
+        }
+        return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+    }
+
+    static long max(long[] values) {
+        long m0 = values[0], m1 = m0, m2 = m0, m3 = m0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            m0 = Math.max(m0, values[i]);
+            m1 = Math.max(m1, values[i + 1]);
+            m2 = Math.max(m2, values[i + 2]);
+            m3 = Math.max(m3, values[i + 3]);
+        }
+        for (; i < values.length; i++) {
+            m0 = Math.max(m0, values[i]);
+        }
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+    }
+
+    static int max(int[] values) {
+        int m0 = values[0], m1 = m0, m2 = m0, m3 = m0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            m0 = Math.max(m0, values[i]);
+            m1 = Math.max(m1, values[i + 1]);
+            m2 = Math.max(m2, values[i + 2]);
+            m3 = Math.max(m3, values[i + 3]);
+        }
+        for (; i < values.length; i++) {
+            m0 = Math.max(m0, values[i]);
+        }
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+    }
+
+    static double sumOfSquaredDeviations(long[] values, double mean) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            double d0 = values[i] - mean;
+            double d1 = values[i + 1] - mean;
+            double d2 = values[i + 2] - mean;
+            double d3 = values[i + 3] - mean;
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < values.length; i++) {
+            double d = values[i] - mean;
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static double sumOfSquaredDeviations(int[] values, double mean) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int bound = values.length & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            double d0 = values[i] - mean;
+            double d1 = values[i + 1] - mean;
+            double d2 = values[i + 2] - mean;
+            double d3 = values[i + 3] - mean;
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < values.length; i++) {
+            double d = values[i] - mean;
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static void checkHistogramBounds(double lowerBound, double upperBound, int buckets) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException(String.format("Expected a positive number of buckets but got %d", buckets));
+        }
+        if (!(lowerBound < upperBound)) {
+            throw new IllegalArgumentException(String.format("Expected lowerBound < upperBound but got [%s, %s]", lowerBound, upperBound));
+        }
+    }
+
+    static void histogram(double[] values, double lowerBound, double upperBound, long[] counts) {
+        int buckets = counts.length;
+        double scale = buckets / (upperBound - lowerBound);
+        for (double value : values) {
+            if (value >= lowerBound && value <= upperBound) {
+                counts[bucket(value, lowerBound, scale, buckets)]++;
+            }
+        }
+    }
+
+    static void histogram(long[] values, double lowerBound, double upperBound, long[] counts) {
+        int buckets = counts.length;
+        double scale = buckets / (upperBound - lowerBound);
+        for (long value : values) {
+            if (value >= lowerBound && value <= upperBound) {
+                counts[bucket(value, lowerBound, scale, buckets)]++;
+            }
+        }
+    }
+
+    static void histogram(int[] values, double lowerBound, double upperBound, long[] counts) {
+        int buckets = counts.length;
+        double scale = buckets / (upperBound - lowerBound);
+        for (int value : values) {
+            if (value >= lowerBound && value <= upperBound) {
+                counts[bucket(value, lowerBound, scale, buckets)]++;
+            }
+        }
+    }
+
+    static int bucket(double value, double lowerBound, double scale, int buckets) {
+        int bucket = (int) ((value - lowerBound) * scale);
+        // upperBound itself, or values rounding up to it, belong to the last bucket
+        return bucket < buckets ? bucket : buckets - 1;
+    }
+}
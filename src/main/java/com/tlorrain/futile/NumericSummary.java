@@ -0,0 +1,82 @@
+package com.tlorrain.futile;
+
+/**
+ * Count, sum, min, max, mean and variance of a sequence of numbers, computed in a single pass. The mean and the
+ * variance are updated incrementally (Welford) so that large inputs do not lose precision.
+ */
+public final class NumericSummary {
+
+    private long count;
+    private double sum;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private double mean = Double.NaN;
+    private double m2;
+
+    NumericSummary() {
+    }
+
+    void add(double value) {
+        count++;
+        sum += value;
+        if (count == 1) {
+            min = value;
+            max = value;
+            mean = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+        }
+    }
+
+    /**
+     * @return the number of values summarized
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sum of the values, 0 if there were none
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the smallest value, NaN if there were none
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return the largest value, NaN if there were none
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return the arithmetic mean of the values, NaN if there were none
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return the population variance of the values, NaN if there were none
+     */
+    public double getVariance() {
+        return count == 0 ? Double.NaN : m2 / count;
+    }
+
+    @Override
+    public String toString() {
+        return "NumericSummary{ count=" + count + ", sum=" + sum + ", min=" + min + ", max=" + max
+                + ", mean=" + mean + ", variance=" + getVariance() + " }";
+    }
+}
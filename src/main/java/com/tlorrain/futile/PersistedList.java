@@ -0,0 +1,191 @@
+package com.tlorrain.futile;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A read only list memory mapped from a file, decoding its elements only when they are accessed.
+ * <p>
+ * File layout, big endian : a header made of a magic number (int), the fixed size of the elements or -1 (int) and
+ * the number of elements (int), followed by the encoded elements. When elements have variable sizes the data is
+ * followed by an index holding the offset of every element relative to the start of the data, plus the end offset of
+ * the data (count + 1 ints). As the whole file is mapped at once, it cannot exceed 2GB.
+ * <p>
+ * Files are never modified once written : a new file replaces the previous one atomically, so that lists mapped from
+ * the previous file keep reading it.
+ */
+final class PersistedList<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final int MAGIC = 0x46555431;
+    private static final int HEADER_SIZE = 12;
+
+    private final ByteBuffer data;
+    private final Codec<T> codec;
+    private final int fixedSize;
+    private final int size;
+    private final int indexPosition;
+
+    private PersistedList(ByteBuffer data, Codec<T> codec, int fixedSize, int size) {
+        this.data = data;
+        this.codec = codec;
+        this.fixedSize = fixedSize;
+        this.size = size;
+        this.indexPosition = data.limit() - (size + 1) * 4;
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index %d out of bounds for size %d", index, size));
+        }
+        int start;
+        int end;
+        if (fixedSize >= 0) {
+            start = HEADER_SIZE + index * fixedSize;
+            end = start + fixedSize;
+        } else {
+            start = HEADER_SIZE + data.getInt(indexPosition + index * 4);
+            end = HEADER_SIZE + data.getInt(indexPosition + (index + 1) * 4);
+        }
+        // a duplicate per access keeps concurrent reads from sharing the position of the mapped buffer
+        ByteBuffer element = data.duplicate();
+        element.limit(end);
+        element.position(start);
+        return codec.decode(element);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes a sibling temporary file, then moves it over the target
+     */
+    static <T> void write(Iterable<T> iterable, Path path, Codec<? super T> codec) throws IOException {
+        Path temporary = path.toAbsolutePath().resolveSibling(String.format(".%s.%016x.tmp", path.getFileName(), ThreadLocalRandom.current().nextLong()));
+        try {
+            writeFile(iterable, temporary, path, codec);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException | Error e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    private static <T> void writeFile(Iterable<T> iterable, Path temporary, Path path, Codec<? super T> codec) throws IOException {
+        int fixedSize = codec.fixedSize();
+        int[] offsets = new int[16];
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            LimitedOutputStream limited = new LimitedOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)), path);
+            DataOutputStream out = new DataOutputStream(limited);
+            out.write(new byte[HEADER_SIZE]);
+            for (T value : iterable) {
+                int start = limited.position() - HEADER_SIZE;
+                codec.encode(value, out);
+                int written = limited.position() - HEADER_SIZE - start;
+                if (fixedSize >= 0 && written != fixedSize) {
+                    throw new IllegalArgumentException(String.format("Codec declared a fixed size of %d bytes but wrote %d bytes for %s", fixedSize, written, value));
+                }
+                if (fixedSize < 0) {
+                    if (count + 1 >= offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+                    offsets[count] = start;
+                }
+                count++;
+            }
+            if (fixedSize < 0) {
+                offsets[count] = limited.position() - HEADER_SIZE;
+                for (int i = 0; i <= count; i++) {
+                    out.writeInt(offsets[i]);
+                }
+            }
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(fixedSize).putInt(count);
+            header.flip();
+            channel.write(header, 0);
+        }
+    }
+
+    static <T> PersistedList<T> open(Path path, Codec<T> codec) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException(String.format("Cannot map more than 2GB from %s", path));
+            }
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException(String.format("%s is not a persisted Futile", path));
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (data.getInt(0) != MAGIC) {
+                throw new IOException(String.format("%s is not a persisted Futile", path));
+            }
+            int fixedSize = data.getInt(4);
+            if (fixedSize != codec.fixedSize()) {
+                throw new IllegalArgumentException(String.format("%s was persisted with elements of fixed size %d but the codec has fixed size %d", path, fixedSize, codec.fixedSize()));
+            }
+            return new PersistedList<>(data, codec, fixedSize, data.getInt(8));
+        }
+    }
+
+    /**
+     * Counts the bytes written, failing before the file would exceed the 2GB that can be mapped at once
+     */
+    private static final class LimitedOutputStream extends FilterOutputStream {
+        private final Path path;
+        private long position;
+
+        LimitedOutputStream(OutputStream out, Path path) {
+            super(out);
+            this.path = path;
+        }
+
+        /**
+         * @return the number of bytes written so far, which always fits in an int
+         */
+        int position() {
+            return (int) position;
+        }
+
+        private void reserve(int length) throws IOException {
+            if (position + length > Integer.MAX_VALUE) {
+                throw new IOException(String.format("Cannot persist more than 2GB to %s", path));
+            }
+            position += length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            reserve(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            reserve(len);
+            out.write(b, off, len);
+        }
+    }
+}
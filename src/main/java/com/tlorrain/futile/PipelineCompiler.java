@@ -0,0 +1,433 @@
+package com.tlorrain.futile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generates the class running a {@link CompiledPipeline} as a single loop. Every stage gets its own call site in the
+ * generated bytecode, and every pipeline gets its own class, defined in a fresh class loader. Each call site therefore
+ * only ever sees the function of one stage of one pipeline, and stays monomorphic for the JIT whatever the other
+ * pipelines of the application do.
+ * <p>
+ * The generated class is a {@link Closure} applied to the source of the pipeline. Its constructor takes the stage
+ * functions and the sink receiving the elements produced by the pipeline :
+ * <pre>
+ * public final class FusedPipeline implements Closure {
+ *     public FusedPipeline(Object[] stages, Closure sink)
+ *     public void apply(Object source) // for (Object e : (Iterable) source) s0(e)
+ *     public final void s0(Object e)   // stages 0 to 15, then s1(e)
+ *     ...
+ *     public final void sN(Object e)   // last stages, then sink.apply(e)
+ * }
+ * </pre>
+ * Stage i is loaded from the stages array with the constant index i. A flatMap stage opens a loop over its result
+ * within the segment, the following stages of the segment running in its body, and a filter rejecting an element
+ * continues the innermost loop. Splitting stages in segments of a fixed size keeps every method small enough to be
+ * inlined, and bounds the size of the class and the depth of the call stack by the number of segments.
+ * <p>
+ * Class files are written in version 49 (Java 5), which is verified without stack map frames.
+ */
+final class PipelineCompiler {
+
+    static final int FILTER = 0;
+    static final int MAP = 1;
+    static final int FLAT_MAP = 2;
+
+    private static final int STAGES_PER_SEGMENT = 16;
+
+    /**
+     * Every segment costs three constant pool entries, less than 800 bytes of code and one stack frame at run time,
+     * stages themselves using no constant. The limit keeps the call stack of a run within 1024 generated frames, well
+     * below the 65535 entries of the constant pool and the 32767 indexes pushed by sipush.
+     */
+    static final int MAX_STAGES = 1024 * STAGES_PER_SEGMENT;
+
+    private static final String CLASS_NAME = "com/tlorrain/futile/generated/FusedPipeline";
+    private static final String CLOSURE = "com/tlorrain/futile/Closure";
+    private static final String PREDICATE = "com/tlorrain/futile/Predicate";
+    private static final String FUNCTION1 = "com/tlorrain/futile/Function1";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String ITERABLE = "java/lang/Iterable";
+    private static final String ITERATOR = "java/util/Iterator";
+    private static final String SEGMENT_DESCRIPTOR = "(Ljava/lang/Object;)V";
+    private static final String STAGES_DESCRIPTOR = "[Ljava/lang/Object;";
+    private static final String SINK_DESCRIPTOR = "L" + CLOSURE + ";";
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int ALOAD = 0x19;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int AALOAD = 0x32;
+    private static final int ASTORE = 0x3a;
+    private static final int ASTORE_1 = 0x4c;
+    private static final int ASTORE_2 = 0x4d;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int GOTO = 0xa7;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int CHECKCAST = 0xc0;
+
+    private PipelineCompiler() {
+    }
+
+    /**
+     * Generates and loads the class running a pipeline made of stages of the given kinds
+     *
+     * @return the constructor of the generated class, taking the stage functions and the sink
+     */
+    static Constructor<?> compile(int[] kinds) {
+        byte[] bytes = generate(kinds);
+        Class<?> fused = new FusedPipelineLoader(PipelineCompiler.class.getClassLoader()).define(bytes);
+        try {
+            return fused.getConstructor(Object[].class, Closure.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Generated pipeline class has no constructor", e);
+        }
+    }
+
+    static byte[] generate(int[] kinds) {
+        if (kinds.length > MAX_STAGES) {
+            throw new IllegalStateException(String.format("Cannot compile a pipeline of more than %d stages", MAX_STAGES));
+        }
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef(OBJECT);
+        int closureClass = pool.classRef(CLOSURE);
+        int segments = Math.max(1, (kinds.length + STAGES_PER_SEGMENT - 1) / STAGES_PER_SEGMENT);
+
+        try {
+            ByteArrayOutputStream methods = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(methods);
+            writeMethod(out, pool, ACC_PUBLIC, "<init>", "(" + STAGES_DESCRIPTOR + SINK_DESCRIPTOR + ")V", constructor(pool), 2, 3);
+            writeMethod(out, pool, ACC_PUBLIC, "apply", SEGMENT_DESCRIPTOR, sourceLoop(pool), 3, 3);
+            for (int segment = 0; segment < segments; segment++) {
+                int start = segment * STAGES_PER_SEGMENT;
+                int end = Math.min(kinds.length, start + STAGES_PER_SEGMENT);
+                int flatMaps = 0;
+                for (int i = start; i < end; i++) {
+                    flatMaps += kinds[i] == FLAT_MAP ? 1 : 0;
+                }
+                writeMethod(out, pool, ACC_PUBLIC | ACC_FINAL, segmentName(segment), SEGMENT_DESCRIPTOR,
+                        segment(pool, kinds, start, end, segment), 3, 2 + flatMaps);
+            }
+
+            ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+            DataOutputStream classOut = new DataOutputStream(classFile);
+            classOut.writeInt(0xCAFEBABE);
+            classOut.writeShort(0);
+            classOut.writeShort(49);
+            pool.writeTo(classOut);
+            classOut.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            classOut.writeShort(thisClass);
+            classOut.writeShort(superClass);
+            classOut.writeShort(1);
+            classOut.writeShort(closureClass);
+            classOut.writeShort(2);
+            writeField(classOut, pool, "stages", STAGES_DESCRIPTOR);
+            writeField(classOut, pool, "sink", SINK_DESCRIPTOR);
+            classOut.writeShort(segments + 2);
+            methods.writeTo(classOut);
+            classOut.writeShort(0);
+            return classFile.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write to a byte array", e);
+        }
+    }
+
+    private static String segmentName(int segment) {
+        return "s" + segment;
+    }
+
+    private static byte[] constructor(ConstantPool pool) {
+        Code code = new Code();
+        code.op(ALOAD_0);
+        code.op(INVOKESPECIAL).u2(pool.methodRef(OBJECT, "<init>", "()V"));
+        code.op(ALOAD_0);
+        code.op(ALOAD_1);
+        code.op(PUTFIELD).u2(pool.fieldRef(CLASS_NAME, "stages", STAGES_DESCRIPTOR));
+        code.op(ALOAD_0);
+        code.op(ALOAD_2);
+        code.op(PUTFIELD).u2(pool.fieldRef(CLASS_NAME, "sink", SINK_DESCRIPTOR));
+        code.op(RETURN);
+        return code.toByteArray();
+    }
+
+    private static byte[] sourceLoop(ConstantPool pool) {
+        Code code = new Code();
+        code.op(ALOAD_1);
+        code.op(CHECKCAST).u2(pool.classRef(ITERABLE));
+        code.op(INVOKEINTERFACE).u2(pool.interfaceMethodRef(ITERABLE, "iterator", "()L" + ITERATOR + ";")).u1(1).u1(0);
+        code.op(ASTORE_2);
+        int loop = code.size();
+        code.op(ALOAD_2);
+        code.op(INVOKEINTERFACE).u2(pool.interfaceMethodRef(ITERATOR, "hasNext", "()Z")).u1(1).u1(0);
+        int exit = code.jump(IFEQ);
+        code.op(ALOAD_0);
+        code.op(ALOAD_2);
+        code.op(INVOKEINTERFACE).u2(pool.interfaceMethodRef(ITERATOR, "next", "()Ljava/lang/Object;")).u1(1).u1(0);
+        code.op(INVOKEVIRTUAL).u2(pool.methodRef(CLASS_NAME, segmentName(0), SEGMENT_DESCRIPTOR));
+        code.jumpTo(GOTO, loop);
+        code.patch(exit);
+        code.op(RETURN);
+        return code.toByteArray();
+    }
+
+    /**
+     * Emits the stages of a segment. The current element is in local 1, and the iterator of the n-th flatMap of the
+     * segment in local 1 + n.
+     */
+    private static byte[] segment(ConstantPool pool, int[] kinds, int start, int end, int segment) {
+        Code code = new Code();
+        // the start of the enclosing flatMap loops, innermost first, and the jumps out of them
+        Deque<int[]> loops = new ArrayDeque<>();
+        for (int i = start; i < end; i++) {
+            int kind = kinds[i];
+            code.op(ALOAD_0);
+            code.op(GETFIELD).u2(pool.fieldRef(CLASS_NAME, "stages", STAGES_DESCRIPTOR));
+            code.pushInt(i);
+            code.op(AALOAD);
+            code.op(CHECKCAST).u2(pool.classRef(kind == FILTER ? PREDICATE : FUNCTION1));
+            code.op(ALOAD_1);
+            if (kind == FILTER) {
+                code.op(INVOKEINTERFACE).u2(pool.interfaceMethodRef(PREDICATE, "apply", "(Ljava/lang/Object;)Z")).u1(2).u1(0);
+                int accepted = code.jump(IFNE);
+                next(code, loops);
+                code.patch(accepted);
+            } else {
+                code.op(INVOKEINTERFACE).u2(pool.interfaceMethodRef(FUNCTION1, "apply", "(Ljava/lang/Object;)Ljava/lang/Object;")).u1(2).u1(0);
+                if (kind == MAP) {
+                    code.op(ASTORE_1);
+                } else {
+                    int iterator = 2 + loops.size();
+                    code.op(CHECKCAST).u2(pool.classRef(ITERABLE));
+                    code.op(INVOKEINTERFACE).u2(pool.interfaceMethodRef(ITERABLE, "iterator", "()L" + ITERATOR + ";")).u1(1).u1(0);
+                    code.op(ASTORE).u1(iterator);
+                    int loop = code.size();
+                    code.op(ALOAD).u1(iterator);
+                    code.op(INVOKEINTERFACE).u2(pool.interfaceMethodRef(ITERATOR, "hasNext", "()Z")).u1(1).u1(0);
+                    int exit = code.jump(IFEQ);
+                    code.op(ALOAD).u1(iterator);
+                    code.op(INVOKEINTERFACE).u2(pool.interfaceMethodRef(ITERATOR, "next", "()Ljava/lang/Object;")).u1(1).u1(0);
+                    code.op(ASTORE_1);
+                    loops.push(new int[]{loop, exit});
+                }
+            }
+        }
+        code.op(ALOAD_0);
+        if (end < kinds.length) {
+            code.op(ALOAD_1);
+            code.op(INVOKEVIRTUAL).u2(pool.methodRef(CLASS_NAME, segmentName(segment + 1), SEGMENT_DESCRIPTOR));
+        } else {
+            code.op(GETFIELD).u2(pool.fieldRef(CLASS_NAME, "sink", SINK_DESCRIPTOR));
+            code.op(ALOAD_1);
+            code.op(INVOKEINTERFACE).u2(pool.interfaceMethodRef(CLOSURE, "apply", SEGMENT_DESCRIPTOR)).u1(2).u1(0);
+        }
+        next(code, loops);
+        while (!loops.isEmpty()) {
+            code.patch(loops.pop()[1]);
+            next(code, loops);
+        }
+        return code.toByteArray();
+    }
+
+    /**
+     * Emits the jump to the next element : the next iteration of the innermost flatMap loop, if any
+     */
+    private static void next(Code code, Deque<int[]> loops) {
+        if (loops.isEmpty()) {
+            code.op(RETURN);
+        } else {
+            code.jumpTo(GOTO, loops.peek()[0]);
+        }
+    }
+
+    private static void writeField(DataOutputStream out, ConstantPool pool, String name, String descriptor) throws IOException {
+        out.writeShort(ACC_PRIVATE | ACC_FINAL);
+        out.writeShort(pool.utf8(name));
+        out.writeShort(pool.utf8(descriptor));
+        out.writeShort(0);
+    }
+
+    private static void writeMethod(DataOutputStream out, ConstantPool pool, int access, String name, String descriptor,
+                                    byte[] code, int maxStack, int maxLocals) throws IOException {
+        out.writeShort(access);
+        out.writeShort(pool.utf8(name));
+        out.writeShort(pool.utf8(descriptor));
+        out.writeShort(1);
+        out.writeShort(pool.utf8("Code"));
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    private static final class Code {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        Code op(int opcode) {
+            return u1(opcode);
+        }
+
+        Code u1(int value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) value;
+            return this;
+        }
+
+        Code u2(int value) {
+            return u1(value >>> 8).u1(value);
+        }
+
+        void pushInt(int value) {
+            if (value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value <= Byte.MAX_VALUE) {
+                op(BIPUSH).u1(value);
+            } else {
+                op(SIPUSH).u2(value);
+            }
+        }
+
+        /**
+         * Emits a jump to be patched once its target is known
+         *
+         * @return the position of the jump
+         */
+        int jump(int opcode) {
+            int position = size;
+            op(opcode).u2(0);
+            return position;
+        }
+
+        void jumpTo(int opcode, int target) {
+            int position = size;
+            op(opcode).u2(target - position);
+        }
+
+        /**
+         * Makes a jump emitted by {@link #jump(int)} target the current position
+         */
+        void patch(int jump) {
+            int offset = size - jump;
+            bytes[jump + 1] = (byte) (offset >>> 8);
+            bytes[jump + 2] = (byte) offset;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            Integer index = indexes.get("utf8 " + value);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(1);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot write to a byte array", e);
+            }
+            return register("utf8 " + value);
+        }
+
+        int classRef(String name) {
+            return entry("class " + name, 7, utf8(name), -1);
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            return entry("field " + owner + "." + name + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            return entry("method " + owner + "." + name + descriptor, 10, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        int interfaceMethodRef(String owner, String name, String descriptor) {
+            return entry("interface " + owner + "." + name + descriptor, 11, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            return entry("nameAndType " + name + descriptor, 12, utf8(name), utf8(descriptor));
+        }
+
+        private int entry(String key, int tag, int first, int second) {
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(tag);
+                out.writeShort(first);
+                if (second >= 0) {
+                    out.writeShort(second);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot write to a byte array", e);
+            }
+            return register(key);
+        }
+
+        private int register(String key) {
+            int index = count++;
+            indexes.put(key, index);
+            return index;
+        }
+
+        void writeTo(DataOutputStream classOut) throws IOException {
+            classOut.writeShort(count);
+            bytes.writeTo(classOut);
+        }
+    }
+
+    /**
+     * Defines a single generated class. Every pipeline uses its own loader, so that the same class name can be
+     * defined once per pipeline.
+     */
+    private static final class FusedPipelineLoader extends ClassLoader {
+        FusedPipelineLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(byte[] bytes) {
+            return defineClass(CLASS_NAME.replace('/', '.'), bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.tlorrain.futile;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Estimates quantiles of a sequence of numbers in fixed memory (KLL sketch). Values are kept in levels of compactors,
+ * a value of level h standing for 2^h values of the input : when a level is full it is sorted and every other value
+ * is promoted to the next level. A parameter k keeps about 3k values and gives a rank error of about 1.7 / k.
+ * Sketches with the same k filled from different parts of an input can be merged.
+ */
+public final class QuantileSketch {
+
+    private final int k;
+    private final Random random;
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    /**
+     * @param k the size of the largest compactor, at least 8
+     * @throws IllegalArgumentException if k is lower than 8
+     */
+    public QuantileSketch(int k) {
+        this(k, new Random());
+    }
+
+    /**
+     * @param k      the size of the largest compactor, at least 8
+     * @param random the source of randomness used when compacting
+     * @throws IllegalArgumentException if k is lower than 8
+     * @throws NullPointerException     if random is null
+     */
+    public QuantileSketch(int k, Random random) {
+        if (k < 8) {
+            throw new IllegalArgumentException(String.format("Expected k to be at least 8 but got %d", k));
+        }
+        if (random == null) {
+            throw new NullPointerException("Cannot compact with a null random");
+        }
+        this.k = k;
+        this.random = random;
+        levels[0] = new double[k];
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        min = count == 0 ? value : Math.min(min, value);
+        max = count == 0 ? value : Math.max(max, value);
+        count++;
+        append(0, value);
+        while (compactOnce()) {
+            // compacting a level may overflow the next one
+        }
+    }
+
+    /**
+     * Merges another sketch in this one, so that this sketch describes the values added to both of them
+     *
+     * @param other the sketch to merge, left unchanged
+     * @throws IllegalArgumentException if the sketches do not have the same k
+     */
+    public void merge(QuantileSketch other) {
+        if (other.k != k) {
+            throw new IllegalArgumentException(String.format("Cannot merge sketches with k %d and %d", k, other.k));
+        }
+        if (other.count == 0) {
+            return;
+        }
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+        for (int level = 0; level < other.levels.length; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+        }
+        while (compactOnce()) {
+            // merged levels may need several compactions
+        }
+    }
+
+    /**
+     * @param fraction the fraction of values that should be lower than or equal to the result, between 0 and 1
+     * @return an estimate of the value at this fraction, NaN if no value was added
+     * @throws IllegalArgumentException if fraction is out of range
+     */
+    public double quantile(double fraction) {
+        if (!(fraction >= 0 && fraction <= 1)) {
+            throw new IllegalArgumentException(String.format("Expected a fraction between 0 and 1 but got %s", fraction));
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (fraction == 0) {
+            return min;
+        }
+        if (fraction == 1) {
+            return max;
+        }
+        int retained = 0;
+        for (int size : sizes) {
+            retained += size;
+        }
+        final double[] values = new double[retained];
+        long[] weights = new long[retained];
+        int position = 0;
+        for (int level = 0; level < levels.length; level++) {
+            for (int i = 0; i < sizes[level]; i++) {
+                values[position] = levels[level][i];
+                weights[position] = 1L << level;
+                position++;
+            }
+        }
+        Integer[] order = new Integer[retained];
+        for (int i = 0; i < retained; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(values[o1], values[o2]);
+            }
+        });
+        long totalWeight = 0;
+        for (long weight : weights) {
+            totalWeight += weight;
+        }
+        double target = fraction * totalWeight;
+        long cumulativeWeight = 0;
+        for (Integer index : order) {
+            cumulativeWeight += weights[index];
+            if (cumulativeWeight >= target) {
+                return values[index];
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the number of values added to this sketch, NaNs excluded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    private int capacity(int level) {
+        int depth = levels.length - 1 - level;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+    }
+
+    private void append(int level, double value) {
+        if (level == levels.length) {
+            levels = Arrays.copyOf(levels, level + 1);
+            sizes = Arrays.copyOf(sizes, level + 1);
+            levels[level] = new double[capacity(level)];
+        }
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], Math.max(2, levels[level].length * 2));
+        }
+        levels[level][sizes[level]++] = value;
+    }
+
+    /**
+     * Compacts the lowest level exceeding its capacity, if any
+     */
+    private boolean compactOnce() {
+        for (int level = 0; level < levels.length; level++) {
+            if (sizes[level] >= capacity(level)) {
+                compact(level);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void compact(int level) {
+        double[] values = levels[level];
+        int size = sizes[level];
+        Arrays.sort(values, 0, size);
+        // an odd value out stays on this level so that the total weight is preserved
+        int compacted = size - (size & 1);
+        int offset = random.nextBoolean() ? 1 : 0;
+        for (int i = offset; i < compacted; i += 2) {
+            append(level + 1, values[i]);
+        }
+        if (compacted < size) {
+            values[0] = values[size - 1];
+        }
+        sizes[level] = size - compacted;
+    }
+}
@@ -0,0 +1,106 @@
+package com.tlorrain.futile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A uniform random sample of a fixed number of elements, taken from any number of elements (reservoir sampling).
+ * Reservoirs filled from different parts of an input can be merged into a sample of the whole input.
+ */
+public final class Reservoir<T> {
+
+    private final int capacity;
+    private final Random random;
+    private List<T> sample;
+    private long count;
+
+    /**
+     * @param capacity the maximum number of elements in the sample
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    public Reservoir(int capacity) {
+        this(capacity, new Random());
+    }
+
+    /**
+     * @param capacity the maximum number of elements in the sample
+     * @param random   the source of randomness to use
+     * @throws IllegalArgumentException if capacity is negative
+     * @throws NullPointerException     if random is null
+     */
+    public Reservoir(int capacity, Random random) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(String.format("Expected a non negative capacity but got %d", capacity));
+        }
+        if (random == null) {
+            throw new NullPointerException("Cannot sample with a null random");
+        }
+        this.capacity = capacity;
+        this.random = random;
+        this.sample = new ArrayList<>();
+    }
+
+    public void add(T value) {
+        count++;
+        if (sample.size() < capacity) {
+            sample.add(value);
+        } else {
+            long index = (long) (random.nextDouble() * count);
+            if (index < capacity) {
+                sample.set((int) index, value);
+            }
+        }
+    }
+
+    /**
+     * Merges another reservoir in this one, so that this reservoir samples the elements added to both of them. Every
+     * element of a reservoir stands for count / sample size elements of its input, elements are drawn from the two
+     * reservoirs according to this weight.
+     *
+     * @param other the reservoir to merge, left unchanged
+     * @throws IllegalArgumentException if the reservoirs do not have the same capacity
+     */
+    public void merge(Reservoir<T> other) {
+        if (other.capacity != capacity) {
+            throw new IllegalArgumentException(String.format("Cannot merge reservoirs of capacity %d and %d", capacity, other.capacity));
+        }
+        List<T> left = new ArrayList<>(sample);
+        List<T> right = new ArrayList<>(other.sample);
+        double leftWeight = left.isEmpty() ? 0 : (double) count / left.size();
+        double rightWeight = right.isEmpty() ? 0 : (double) other.count / right.size();
+        List<T> merged = new ArrayList<>();
+        while (merged.size() < capacity && !(left.isEmpty() && right.isEmpty())) {
+            double leftTotal = left.size() * leftWeight;
+            double rightTotal = right.size() * rightWeight;
+            List<T> source = random.nextDouble() * (leftTotal + rightTotal) < leftTotal ? left : right;
+            // removing a random element by swapping it with the last one
+            int index = random.nextInt(source.size());
+            merged.add(source.get(index));
+            source.set(index, source.get(source.size() - 1));
+            source.remove(source.size() - 1);
+        }
+        sample = merged;
+        count += other.count;
+    }
+
+    /**
+     * @return the sampled elements, in no particular order
+     */
+    public List<T> getSample() {
+        return Collections.unmodifiableList(sample);
+    }
+
+    /**
+     * @return the number of elements the sample was taken from
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "Reservoir{ count=" + count + ", sample=" + sample + " }";
+    }
+}
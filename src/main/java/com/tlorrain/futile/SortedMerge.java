@@ -0,0 +1,101 @@
+package com.tlorrain.futile;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Lazily merges sorted iterables, keeping the next element of every iterable in a min-heap
+ */
+final class SortedMerge<T> implements Iterable<T> {
+
+    private final Comparator<? super T> comparator;
+    private final boolean distinct;
+    private final List<Iterable<? extends T>> iterables;
+
+    /**
+     * @param iterables the iterables to merge, owned by the merge from then on
+     */
+    SortedMerge(Comparator<? super T> comparator, boolean distinct, List<Iterable<? extends T>> iterables) {
+        if (comparator == null) {
+            throw new NullPointerException("Cannot merge with a null comparator");
+        }
+        for (Iterable<? extends T> iterable : iterables) {
+            if (iterable == null) {
+                throw new NullPointerException("Cannot merge a null iterable");
+            }
+        }
+        this.comparator = comparator;
+        this.distinct = distinct;
+        this.iterables = iterables;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        final PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, iterables.size()));
+        for (int i = 0; i < iterables.size(); i++) {
+            Iterator<? extends T> iterator = iterables.get(i).iterator();
+            if (iterator.hasNext()) {
+                heads.add(new Head(i, iterator));
+            }
+        }
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (heads.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                T value = advance(heads.poll());
+                if (distinct) {
+                    while (!heads.isEmpty() && comparator.compare(heads.peek().value, value) == 0) {
+                        advance(heads.poll());
+                    }
+                }
+                return value;
+            }
+
+            /**
+             * Moves a head polled from the heap to the next element of its iterable, returning its previous value
+             */
+            private T advance(Head head) {
+                T value = head.value;
+                if (head.iterator.hasNext()) {
+                    head.value = head.iterator.next();
+                    heads.add(head);
+                }
+                return value;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private class Head implements Comparable<Head> {
+        private final int source;
+        private final Iterator<? extends T> iterator;
+        private T value;
+
+        Head(int source, Iterator<? extends T> iterator) {
+            this.source = source;
+            this.iterator = iterator;
+            this.value = iterator.next();
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int comparison = comparator.compare(value, other.value);
+            // equal elements come out in the order of their iterables, keeping the merge stable
+            return comparison != 0 ? comparison : Integer.compare(source, other.source);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.tlorrain.futile;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy sliding windows over an iterable, backed by a ring buffer holding the last elements read from it.
+ */
+final class Windows {
+
+    private Windows() {
+    }
+
+    static void checkWindow(int size, int step) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(String.format("Expected a positive window size but got %d", size));
+        }
+        if (step <= 0) {
+            throw new IllegalArgumentException(String.format("Expected a positive window step but got %d", step));
+        }
+    }
+
+    /**
+     * @param copy whether every window should be copied to a new list, otherwise the ring itself is returned
+     */
+    static <T> Iterable<List<T>> windows(final Iterable<T> iterable, final int size, final int step, final boolean copy) {
+        checkWindow(size, step);
+        if (iterable == null) {
+            throw new NullPointerException("Cannot create windows over a null iterable");
+        }
+        return new Iterable<List<T>>() {
+            @Override
+            public Iterator<List<T>> iterator() {
+                final Ring<T> ring = new Ring<>(size);
+                return new WindowIterator<List<T>, T>(iterable.iterator(), ring, step) {
+                    @Override
+                    void push(T element) {
+                        ring.push(element);
+                    }
+
+                    @Override
+                    List<T> current() {
+                        return copy ? new ArrayList<>(ring) : ring;
+                    }
+                };
+            }
+        };
+    }
+
+    static <T, U> Iterable<U> slidingFold(final Iterable<T> iterable, final int size, final U initialValue,
+                                          final Function2<? super U, ? super T, ? extends U> addFunction,
+                                          final Function2<? super U, ? super T, ? extends U> removeFunction) {
+        checkWindow(size, 1);
+        if (iterable == null || addFunction == null) {
+            throw new NullPointerException("Cannot fold over a null iterable or with a null function");
+        }
+        return new Iterable<U>() {
+            @Override
+            public Iterator<U> iterator() {
+                final Ring<T> ring = new Ring<>(size);
+                return new WindowIterator<U, T>(iterable.iterator(), ring, 1) {
+                    private U accumulator = initialValue;
+
+                    @Override
+                    void push(T element) {
+                        if (removeFunction != null) {
+                            if (ring.isFull()) {
+                                accumulator = removeFunction.apply(accumulator, ring.get(0));
+                            }
+                            accumulator = addFunction.apply(accumulator, element);
+                        }
+                        ring.push(element);
+                    }
+
+                    @Override
+                    U current() {
+                        if (removeFunction != null) {
+                            return accumulator;
+                        }
+                        U refolded = initialValue;
+                        for (T element : ring) {
+                            refolded = addFunction.apply(refolded, element);
+                        }
+                        return refolded;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Reads the source until the ring is full, then step elements at a time, producing a value each time
+     */
+    private abstract static class WindowIterator<V, T> implements Iterator<V> {
+        private final Iterator<T> source;
+        private final Ring<T> ring;
+        private final int step;
+        private boolean fetched;
+        private boolean available;
+
+        WindowIterator(Iterator<T> source, Ring<T> ring, int step) {
+            this.source = source;
+            this.ring = ring;
+            this.step = step;
+        }
+
+        abstract void push(T element);
+
+        abstract V current();
+
+        @Override
+        public boolean hasNext() {
+            if (!fetched) {
+                fetched = true;
+                available = advance(ring.isFull() ? step : ring.capacity());
+            }
+            return available;
+        }
+
+        private boolean advance(int count) {
+            for (int i = 0; i < count; i++) {
+                if (!source.hasNext()) {
+                    return false;
+                }
+                push(source.next());
+            }
+            return true;
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            fetched = false;
+            return current();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A fixed capacity list of the last elements pushed to it, oldest first
+     */
+    private static final class Ring<T> extends AbstractList<T> {
+        private final Object[] buffer;
+        private int next;
+        private int size;
+
+        Ring(int capacity) {
+            buffer = new Object[capacity];
+        }
+
+        int capacity() {
+            return buffer.length;
+        }
+
+        boolean isFull() {
+            return size == buffer.length;
+        }
+
+        void push(T element) {
+            buffer[next] = element;
+            next = next + 1 == buffer.length ? 0 : next + 1;
+            if (size < buffer.length) {
+                size++;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(String.format("Index %d out of bounds for size %d", index, size));
+            }
+            int start = isFull() ? next : 0;
+            int position = start + index;
+            return (T) buffer[position < buffer.length ? position : position - buffer.length];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
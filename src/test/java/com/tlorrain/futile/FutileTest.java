@@ -2,15 +2,26 @@ package com.tlorrain.futile;
 
 import org.junit.Test;
 
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -238,6 +249,319 @@ public class FutileTest {
         Futile.groupBy(Arrays.asList("a", "ha", "ha", "ho", "hoooo", "aaa"), null);
     }
 
+    @Test
+    public void static_eachConcurrently() {
+        final AtomicLong sum = new AtomicLong();
+        Futile.eachConcurrently(range(1000), new Closure<Integer>() {
+            @Override
+            public void apply(Integer it) {
+                sum.addAndGet(it);
+            }
+        }, 4, 7);
+        assertThat(sum.get()).isEqualTo(499500L);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void static_eachConcurrently_closureThrows() {
+        Futile.eachConcurrently(range(1000), new Closure<Integer>() {
+            @Override
+            public void apply(Integer it) {
+                if (it == 500) {
+                    throw new IllegalStateException();
+                }
+            }
+        }, 4, 7);
+    }
+
+    @Test
+    public void static_mapConcurrently_rethrowsOriginalException() {
+        final IllegalStateException failure = new IllegalStateException("failed on 500");
+        try {
+            Futile.mapConcurrently(range(1000), new Function1<Integer, Integer>() {
+                @Override
+                public Integer apply(Integer it) {
+                    if (it == 500) {
+                        throw failure;
+                    }
+                    return it;
+                }
+            }, 4, 7);
+        } catch (IllegalStateException e) {
+            assertThat(e).isSameAs(failure);
+            return;
+        }
+        throw new AssertionError("Expected the failure to be rethrown");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void static_eachConcurrently_noThreads() {
+        Futile.eachConcurrently(Arrays.asList(1, 2), new Closure<Integer>() {
+            @Override
+            public void apply(Integer it) {
+
+            }
+        }, 0, 7);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void static_eachConcurrently_nullClosure() {
+        Futile.eachConcurrently(Arrays.asList(1, 2), null, 2, 7);
+    }
+
+    @Test
+    public void static_mapConcurrently() {
+        List<Integer> result = Futile.mapConcurrently(range(1000), new Function1<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer it) {
+                return it * 2;
+            }
+        }, 4, 7);
+        assertThat(result).hasSize(1000);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(result.get(i)).isEqualTo(i * 2);
+        }
+    }
+
+    @Test
+    public void static_numericAggregates() {
+        double[] values = {4, 1, 7, 3, 5, 2, 6};
+        assertThat(Futile.sum(values)).isEqualTo(28.0);
+        assertThat(Futile.min(values)).isEqualTo(1.0);
+        assertThat(Futile.max(values)).isEqualTo(7.0);
+        assertThat(Futile.average(values)).isEqualTo(4.0);
+        assertThat(Futile.variance(values)).isEqualTo(4.0);
+    }
+
+    @Test
+    public void static_sum_empty() {
+        assertThat(Futile.sum(new double[0])).isEqualTo(0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void static_min_empty() {
+        Futile.min(new double[0]);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void static_sum_nullArray() {
+        Futile.sum((double[]) null);
+    }
+
+    @Test
+    public void static_histogram() {
+        assertThat(Futile.histogram(new double[]{-1, 0, 0.5, 1, 2.5, 3.9, 4, 5}, 0, 4, 4))
+                .isEqualTo(new long[]{2, 1, 1, 2});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void static_histogram_invalidBounds() {
+        Futile.histogram(new double[]{1, 2}, 4, 0, 4);
+    }
+
+    @Test
+    public void static_summarize() {
+        NumericSummary summary = Futile.summarize(Arrays.asList(4, 1, 7, 3, 5, 2, 6));
+        assertThat(summary.getCount()).isEqualTo(7L);
+        assertThat(summary.getSum()).isEqualTo(28.0);
+        assertThat(summary.getMin()).isEqualTo(1.0);
+        assertThat(summary.getMax()).isEqualTo(7.0);
+        assertThat(summary.getMean()).isEqualTo(4.0);
+        assertThat(summary.getVariance()).isEqualTo(4.0);
+    }
+
+    @Test
+    public void static_histogram_iterable() {
+        assertThat(Futile.histogram(Arrays.asList(-1, 0, 1, 2, 3, 4, 5), 0, 4, 2)).isEqualTo(new long[]{2, 3});
+    }
+
+    @Test
+    public void static_numericAggregates_long() {
+        long[] values = {4, 1, 7, 3, 5, 2, 6};
+        assertThat(Futile.sum(values)).isEqualTo(28L);
+        assertThat(Futile.min(values)).isEqualTo(1L);
+        assertThat(Futile.max(values)).isEqualTo(7L);
+        assertThat(Futile.average(values)).isEqualTo(4.0);
+        assertThat(Futile.variance(values)).isEqualTo(4.0);
+        assertThat(Futile.average(new long[]{Long.MAX_VALUE, Long.MAX_VALUE})).isEqualTo((double) Long.MAX_VALUE);
+    }
+
+    @Test
+    public void static_numericAggregates_int() {
+        int[] values = {4, 1, 7, 3, 5, 2, 6};
+        assertThat(Futile.sum(values)).isEqualTo(28L);
+        assertThat(Futile.min(values)).isEqualTo(1);
+        assertThat(Futile.max(values)).isEqualTo(7);
+        assertThat(Futile.average(values)).isEqualTo(4.0);
+        assertThat(Futile.variance(values)).isEqualTo(4.0);
+        assertThat(Futile.sum(new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE})).isEqualTo(2L * Integer.MAX_VALUE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void static_max_emptyInts() {
+        Futile.max(new int[0]);
+    }
+
+    @Test
+    public void static_histogram_primitives() {
+        assertThat(Futile.histogram(new long[]{-1, 0, 1, 2, 3, 4, 5}, 0, 4, 2)).isEqualTo(new long[]{2, 3});
+        assertThat(Futile.histogram(new int[]{-1, 0, 1, 2, 3, 4, 5}, 0, 4, 2)).isEqualTo(new long[]{2, 3});
+    }
+
+    @Test
+    public void summarize() {
+        NumericSummary summary = Futile.from(Arrays.asList(4, 1, 7, 3, 5, 2, 6)).summarize();
+        assertThat(summary.getCount()).isEqualTo(7L);
+        assertThat(summary.getMean()).isEqualTo(4.0);
+        assertThat(summary.getVariance()).isEqualTo(4.0);
+    }
+
+    @Test
+    public void histogram() {
+        assertThat(Futile.from(Arrays.asList(-1.0, 0.5, 1.5, 2.5, 3.5, 4.5)).histogram(0, 4, 2)).isEqualTo(new long[]{2, 2});
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void summarize_notNumbers() {
+        Futile.from(Arrays.asList("foo", "bar")).summarize();
+    }
+
+    @Test
+    public void static_sample() {
+        Reservoir<Integer> reservoir = Futile.sample(integers(0, 10000), 100);
+        assertThat(reservoir.getCount()).isEqualTo(10000L);
+        assertThat(reservoir.getSample()).hasSize(100);
+        assertThat(new HashSet<>(reservoir.getSample())).hasSize(100);
+    }
+
+    @Test
+    public void static_sample_smallerThanSize() {
+        assertThat(Futile.sample(Arrays.asList(1, 2, 3), 10).getSample()).containsOnly(1, 2, 3);
+    }
+
+    @Test
+    public void static_sample_merge() {
+        Reservoir<Integer> reservoir = Futile.sample(integers(0, 1000), 10);
+        reservoir.merge(Futile.sample(integers(1000, 2000), 10));
+        assertThat(reservoir.getCount()).isEqualTo(2000L);
+        assertThat(new HashSet<>(reservoir.getSample())).hasSize(10);
+    }
+
+    @Test
+    public void static_approximateDistinct() {
+        List<Integer> values = new ArrayList<>(integers(0, 100000));
+        values.addAll(integers(0, 100000));
+        long estimate = Futile.approximateDistinct(values, 14).estimate();
+        assertThat(estimate).isGreaterThan(95000L).isLessThan(105000L);
+    }
+
+    @Test
+    public void static_approximateDistinct_merge() {
+        HyperLogLog sketch = Futile.approximateDistinct(integers(0, 60000), 14);
+        sketch.merge(Futile.approximateDistinct(integers(40000, 100000), 14));
+        assertThat(sketch.estimate()).isGreaterThan(95000L).isLessThan(105000L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void static_approximateDistinct_invalidPrecision() {
+        Futile.approximateDistinct(Arrays.asList(1, 2), 2);
+    }
+
+    @Test
+    public void static_approximateQuantiles() {
+        QuantileSketch sketch = Futile.approximateQuantiles(integers(0, 100000), 200);
+        assertThat(sketch.getCount()).isEqualTo(100000L);
+        assertThat(sketch.quantile(0)).isEqualTo(0.0);
+        assertThat(sketch.quantile(1)).isEqualTo(99999.0);
+        assertThat(sketch.quantile(0.5)).isGreaterThan(48000.0).isLessThan(52000.0);
+        assertThat(sketch.quantile(0.9)).isGreaterThan(88000.0).isLessThan(92000.0);
+    }
+
+    @Test
+    public void static_approximateQuantiles_merge() {
+        QuantileSketch sketch = Futile.approximateQuantiles(integers(0, 50000), 200);
+        sketch.merge(Futile.approximateQuantiles(integers(50000, 100000), 200));
+        assertThat(sketch.getCount()).isEqualTo(100000L);
+        assertThat(sketch.quantile(0.5)).isGreaterThan(48000.0).isLessThan(52000.0);
+    }
+
+    @Test
+    public void static_bloomFilter() {
+        BloomFilter<Integer> filter = Futile.bloomFilter(integers(0, 10000), 10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            assertThat(filter.mightContain(i)).isTrue();
+        }
+        int falsePositives = 0;
+        for (int i = 10000; i < 20000; i++) {
+            if (filter.mightContain(i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(300);
+    }
+
+    @Test
+    public void static_bloomFilter_merge() {
+        BloomFilter<Integer> filter = Futile.bloomFilter(integers(0, 100), 200, 0.01);
+        filter.merge(Futile.bloomFilter(integers(100, 200), 200, 0.01));
+        assertThat(filter.mightContain(42)).isTrue();
+        assertThat(filter.mightContain(142)).isTrue();
+    }
+
+    @Test
+    public void approximateDistinct_hasher() {
+        Futile<Long> values = Futile.from(collidingLongs(0, 100000));
+        assertThat(values.approximateDistinct(14).estimate()).isLessThan(10L);
+        long estimate = values.approximateDistinct(14, LONG_HASHER).estimate();
+        assertThat(estimate).isGreaterThan(95000L).isLessThan(105000L);
+    }
+
+    @Test
+    public void bloomFilter_hasher() {
+        BloomFilter<Long> filter = Futile.from(collidingLongs(0, 10000)).bloomFilter(10000, 0.01, LONG_HASHER);
+        for (Long value : collidingLongs(0, 10000)) {
+            assertThat(filter.mightContain(value)).isTrue();
+        }
+        int falsePositives = 0;
+        for (Long value : collidingLongs(10000, 20000)) {
+            if (filter.mightContain(value)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(300);
+        assertThat(Futile.from(collidingLongs(0, 10000)).bloomFilter(10000, 0.01).mightContain(collidingLongs(10000, 10001).get(0))).isTrue();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void bloomFilter_nullHasher() {
+        Futile.from(Arrays.asList(1L, 2L)).bloomFilter(10, 0.01, null);
+    }
+
+    private static final Function1<Long, Long> LONG_HASHER = new Function1<Long, Long>() {
+        @Override
+        public Long apply(Long it) {
+            return Hashing.mix64(it);
+        }
+    };
+
+    /**
+     * Longs whose hashCode is always 0, as both their halves are equal
+     */
+    private static List<Long> collidingLongs(long from, long to) {
+        List<Long> result = new ArrayList<>();
+        for (long i = from; i < to; i++) {
+            result.add(i << 32 | i);
+        }
+        return result;
+    }
+
+    private static List<Integer> integers(int from, int to) {
+        List<Integer> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            result.add(i);
+        }
+        return result;
+    }
+
     @Test
     public void static_getOnlyElement() throws Exception {
         assertThat(Futile.getOnlyElement(Collections.singleton(42))).isEqualTo(42);
@@ -290,6 +614,38 @@ public class FutileTest {
                 .containsExactly(1, 2);
     }
 
+    @Test
+    public void mergeSorted() {
+        assertThat(Futile.mergeSorted(NATURAL_ORDER, Arrays.asList(1, 4, 7), Collections.<Integer>emptyList(), Arrays.asList(2, 4, 8), Arrays.asList(0, 9)))
+                .containsExactly(0, 1, 2, 4, 4, 7, 8, 9);
+    }
+
+    @Test
+    public void mergeSorted_distinct() {
+        assertThat(Futile.mergeSorted(NATURAL_ORDER, true, Arrays.asList(1, 1, 4, 7), Arrays.asList(1, 4, 8)))
+                .containsExactly(1, 4, 7, 8);
+    }
+
+    @Test
+    public void mergeSorted_lazy() {
+        Iterator<Integer> iterator = Futile.mergeSorted(NATURAL_ORDER, range(Integer.MAX_VALUE), Arrays.asList(1, 2)).iterator();
+        assertThat(iterator.next()).isEqualTo(0);
+        assertThat(iterator.next()).isEqualTo(1);
+        assertThat(iterator.next()).isEqualTo(1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void mergeSorted_nullIterable() {
+        Futile.mergeSorted(NATURAL_ORDER, Arrays.asList(1, 2), null);
+    }
+
+    private static final Comparator<Integer> NATURAL_ORDER = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+            return o1.compareTo(o2);
+        }
+    };
+
     @Test(expected = NullPointerException.class)
     public void from_null() throws Exception {
         Futile.from(null);
@@ -448,5 +804,442 @@ public class FutileTest {
         Futile.from(Arrays.asList("a", "ha", "ha", "ho", "hoooo", "aaa")).groupBy(null);
     }
 
+    @Test
+    public void window_sliding() {
+        assertThat(Futile.from(Arrays.asList(1, 2, 3, 4, 5)).window(3, 1).toArrayList())
+                .isEqualTo(Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(2, 3, 4), Arrays.asList(3, 4, 5)));
+    }
+
+    @Test
+    public void window_tumbling() {
+        assertThat(Futile.from(Arrays.asList(1, 2, 3, 4, 5)).window(2, 2).toArrayList())
+                .isEqualTo(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4)));
+    }
+
+    @Test
+    public void window_stepGreaterThanSize() {
+        assertThat(Futile.from(Arrays.asList(1, 2, 3, 4, 5, 6, 7)).window(2, 3).toArrayList())
+                .isEqualTo(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(4, 5)));
+    }
+
+    @Test
+    public void window_filter() {
+        assertThat(Futile.from(Arrays.asList(1, 2, 3, 4, 5)).window(2, 1).filter(new Predicate<List<Integer>>() {
+            @Override
+            public boolean apply(List<Integer> it) {
+                return it.get(0) % 2 == 1;
+            }
+        }).toArrayList()).isEqualTo(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4)));
+    }
+
+    @Test
+    public void static_window() {
+        assertThat(Futile.map(Futile.window(Arrays.asList(1, 2, 3, 4), 2, 1), new CopyFunction<Integer>()))
+                .isEqualTo(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(2, 3), Arrays.asList(3, 4)));
+    }
+
+    @Test
+    public void window_tooShort() {
+        assertThat(Futile.from(Arrays.asList(1, 2)).window(3, 1)).isEmpty();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void window_noStep() {
+        Futile.from(Arrays.asList(1, 2)).window(3, 0);
+    }
+
+    @Test
+    public void slidingFold() {
+        final List<Integer> added = new ArrayList<>();
+        ArrayList<Integer> result = Futile.from(Arrays.asList(1, 2, 3, 4, 5)).slidingFold(3, 0, new Function2<Integer, Integer, Integer>() {
+            @Override
+            public Integer apply(Integer arg1, Integer arg2) {
+                added.add(arg2);
+                return arg1 + arg2;
+            }
+        }, new Function2<Integer, Integer, Integer>() {
+            @Override
+            public Integer apply(Integer arg1, Integer arg2) {
+                return arg1 - arg2;
+            }
+        }).toArrayList();
+        assertThat(result).containsExactly(6, 9, 12);
+        assertThat(added).containsExactly(1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void slidingFold_noRemoveFunction() {
+        assertThat(Futile.from(Arrays.asList(3, 1, 4, 1, 5)).slidingFold(2, Integer.MIN_VALUE, new Function2<Integer, Integer, Integer>() {
+            @Override
+            public Integer apply(Integer arg1, Integer arg2) {
+                return Math.max(arg1, arg2);
+            }
+        }, null)).containsExactly(3, 4, 4, 5);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void slidingFold_nullFunction() {
+        Futile.from(Arrays.asList(1, 2)).slidingFold(2, 0, null, null);
+    }
+
+    private static class CopyFunction<T> implements Function1<List<T>, List<T>> {
+        @Override
+        public List<T> apply(List<T> it) {
+            return new ArrayList<>(it);
+        }
+    }
+
+    @Test
+    public void persist_fixedSize() throws Exception {
+        Path path = tempFile();
+        Futile.from(Arrays.asList(42, -73, 28)).persist(path, Codecs.INTEGER);
+        Futile<Integer> opened = Futile.open(path, Codecs.INTEGER);
+        assertThat(opened).containsExactly(42, -73, 28);
+        assertThat(opened.toArrayList().get(1)).isEqualTo(-73);
+    }
+
+    @Test
+    public void persist_variableSize() throws Exception {
+        Path path = tempFile();
+        Futile.from(Arrays.asList("foo", "", "b\u00e4rbaz")).persist(path, Codecs.STRING);
+        assertThat(Futile.open(path, Codecs.STRING)).containsExactly("foo", "", "b\u00e4rbaz");
+    }
+
+    @Test
+    public void persist_empty() throws Exception {
+        Path path = tempFile();
+        Futile.from(Collections.<String>emptyList()).persist(path, Codecs.STRING);
+        assertThat(Futile.open(path, Codecs.STRING)).isEmpty();
+    }
+
+    @Test
+    public void persist_replacesOpenedFile() throws Exception {
+        Path path = tempFile();
+        Futile.from(integers(0, 100000)).map(new Function1<Integer, String>() {
+            @Override
+            public String apply(Integer it) {
+                return "value " + it;
+            }
+        }).persist(path, Codecs.STRING);
+        Futile<String> previous = Futile.open(path, Codecs.STRING);
+        Futile.from(Arrays.asList("x")).persist(path, Codecs.STRING);
+        assertThat(previous.toArrayList()).hasSize(100000);
+        assertThat(previous.toArrayList().get(99999)).isEqualTo("value 99999");
+        assertThat(Futile.open(path, Codecs.STRING)).containsExactly("x");
+    }
+
+    @Test
+    public void persist_failureKeepsPreviousFile() throws Exception {
+        Path path = tempFile();
+        Futile.from(Arrays.asList(42, 73)).persist(path, Codecs.INTEGER);
+        try {
+            Futile.from(Arrays.asList(1, 2, 3)).map(new Function1<Integer, Integer>() {
+                @Override
+                public Integer apply(Integer it) {
+                    return it == 3 ? null : it;
+                }
+            }).persist(path, Codecs.INTEGER);
+        } catch (NullPointerException expected) {
+            assertThat(Futile.open(path, Codecs.INTEGER)).containsExactly(42, 73);
+            try (DirectoryStream<Path> temporaries = Files.newDirectoryStream(path.getParent(), "." + path.getFileName() + ".*")) {
+                assertThat(temporaries.iterator().hasNext()).isFalse();
+            }
+            return;
+        }
+        throw new AssertionError("Expected the null element to fail");
+    }
+
+    @Test(expected = IOException.class)
+    public void persist_tooLarge() throws Exception {
+        Futile.from(Arrays.asList("foo", "bar")).persist(tempFile(), new Codec<String>() {
+            @Override
+            public int fixedSize() {
+                return -1;
+            }
+
+            @Override
+            public void encode(String value, DataOutput out) throws IOException {
+                // the size check runs before the bytes are copied, so the array does not need the claimed length
+                out.write(new byte[1], 0, Integer.MAX_VALUE);
+            }
+
+            @Override
+            public String decode(ByteBuffer buffer) {
+                throw new UnsupportedOperationException();
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void open_otherCodec() throws Exception {
+        Path path = tempFile();
+        Futile.from(Arrays.asList(42, 73)).persist(path, Codecs.INTEGER);
+        Futile.open(path, Codecs.LONG);
+    }
+
+    @Test(expected = IOException.class)
+    public void open_notPersisted() throws Exception {
+        Path path = tempFile();
+        Files.write(path, "not a futile".getBytes(StandardCharsets.UTF_8));
+        Futile.open(path, Codecs.STRING);
+    }
+
+    private static Path tempFile() throws IOException {
+        File file = File.createTempFile("futile", ".bin");
+        file.deleteOnExit();
+        return file.toPath();
+    }
+
+    @Test
+    public void static_aggregateAll() {
+        Aggregation<Integer, Long> count = Aggregation.count();
+        Aggregation<Integer, Map<Boolean, List<Integer>>> byParity = Aggregation.groupBy(new Function1<Integer, Boolean>() {
+            @Override
+            public Boolean apply(Integer it) {
+                return it % 2 == 0;
+            }
+        });
+        Aggregation<Integer, Integer> sum = Aggregation.fold(0, new Function2<Integer, Integer, Integer>() {
+            @Override
+            public Integer apply(Integer arg1, Integer arg2) {
+                return arg1 + arg2;
+            }
+        });
+        Aggregation<Integer, ArrayList<Integer>> elements = Aggregation.toArrayList();
+        // range can only be iterated once
+        Aggregation.Results results = Futile.aggregateAll(range(5), count, byParity, sum, elements);
+        assertThat(results.get(count)).isEqualTo(5L);
+        assertThat(results.get(byParity).get(true)).containsExactly(0, 2, 4);
+        assertThat(results.get(byParity).get(false)).containsExactly(1, 3);
+        assertThat(results.get(sum)).isEqualTo(10);
+        assertThat(results.get(elements)).containsExactly(0, 1, 2, 3, 4);
+    }
+
+    @Test
+    public void aggregateAll() {
+        Aggregation<Object, Long> count = Aggregation.count();
+        Aggregation.Results results = Futile.from(Arrays.asList("foo", "bar")).aggregateAll(count);
+        assertThat(results.get(count)).isEqualTo(2L);
+        assertThat(Futile.from(Arrays.asList("foo")).aggregateAll(count).get(count)).isEqualTo(1L);
+    }
+
+    @Test
+    public void aggregateAll_customAggregation() {
+        Aggregation<String, StringBuilder> joined = Aggregation.of(new Function1<Void, StringBuilder>() {
+            @Override
+            public StringBuilder apply(Void it) {
+                return new StringBuilder();
+            }
+        }, new Function2<StringBuilder, String, StringBuilder>() {
+            @Override
+            public StringBuilder apply(StringBuilder builder, String it) {
+                return builder.append(it);
+            }
+        });
+        Aggregation<String, Long> count = Aggregation.count();
+        Aggregation.Results results = Futile.from(Arrays.asList("foo", "bar")).aggregateAll(joined, count);
+        assertThat(results.get(joined).toString()).isEqualTo("foobar");
+        assertThat(results.get(count)).isEqualTo(2L);
+        assertThat(Futile.from(Arrays.asList("baz")).aggregateAll(joined).get(joined).toString()).isEqualTo("baz");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void aggregation_ofNullSupplier() {
+        Aggregation.of(null, new Function2<List<Object>, Object, List<Object>>() {
+            @Override
+            public List<Object> apply(List<Object> list, Object it) {
+                return list;
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aggregateAll_notRun() {
+        Aggregation<Object, Long> count = Aggregation.count();
+        Futile.from(Arrays.asList("foo", "bar")).aggregateAll(count).get(Aggregation.toArrayList());
+    }
+
+    @Test
+    public void compile() {
+        final List<String> calls = new ArrayList<>();
+        CompiledPipeline<Character> pipeline = Futile.from(Arrays.asList("foo", "bar", "baz")).compile()
+                .filter(new Predicate<String>() {
+                    @Override
+                    public boolean apply(String it) {
+                        calls.add("filter " + it);
+                        return it.startsWith("b");
+                    }
+                })
+                .map(new Function1<String, String>() {
+                    @Override
+                    public String apply(String it) {
+                        calls.add("map " + it);
+                        return it.toUpperCase();
+                    }
+                })
+                .flatMap(new Function1<String, List<Character>>() {
+                    @Override
+                    public List<Character> apply(String it) {
+                        return Arrays.asList(it.charAt(0), it.charAt(2));
+                    }
+                });
+        assertThat(calls).isEmpty();
+        assertThat(pipeline.toArrayList()).containsExactly('B', 'R', 'B', 'Z');
+        assertThat(calls).containsExactly("filter foo", "filter bar", "map bar", "filter baz", "map baz");
+    }
+
+    @Test
+    public void compile_fold() {
+        assertThat(Futile.from(Arrays.asList(1, 2, 3)).compile().map(new Function1<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer it) {
+                return it * 10;
+            }
+        }).fold(0, new Function2<Integer, Integer, Integer>() {
+            @Override
+            public Integer apply(Integer arg1, Integer arg2) {
+                return arg1 + arg2;
+            }
+        })).isEqualTo(60);
+    }
+
+    @Test
+    public void compile_maxStages() {
+        Function1<Integer, Integer> increment = new Function1<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer it) {
+                return it + 1;
+            }
+        };
+        CompiledPipeline<Integer> pipeline = Futile.from(Arrays.asList(0, 10)).compile();
+        for (int i = 0; i < PipelineCompiler.MAX_STAGES; i++) {
+            pipeline = pipeline.map(increment);
+        }
+        assertThat(pipeline.toArrayList()).containsExactly(PipelineCompiler.MAX_STAGES, PipelineCompiler.MAX_STAGES + 10);
+        assertThat(pipeline.toArrayList()).containsExactly(PipelineCompiler.MAX_STAGES, PipelineCompiler.MAX_STAGES + 10);
+    }
+
+    @Test
+    public void compile_maxFlatMapStages() {
+        Function1<Integer, List<Integer>> increment = new Function1<Integer, List<Integer>>() {
+            @Override
+            public List<Integer> apply(Integer it) {
+                return Collections.singletonList(it + 1);
+            }
+        };
+        CompiledPipeline<Integer> pipeline = Futile.from(Arrays.asList(0, 10)).compile();
+        for (int i = 0; i < PipelineCompiler.MAX_STAGES; i++) {
+            pipeline = pipeline.flatMap(increment);
+        }
+        assertThat(pipeline.toArrayList()).containsExactly(PipelineCompiler.MAX_STAGES, PipelineCompiler.MAX_STAGES + 10);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void compile_tooManyStages() {
+        Predicate<Object> all = new Predicate<Object>() {
+            @Override
+            public boolean apply(Object it) {
+                return true;
+            }
+        };
+        CompiledPipeline<Integer> pipeline = Futile.from(Arrays.asList(0, 10)).compile();
+        for (int i = 0; i <= PipelineCompiler.MAX_STAGES; i++) {
+            pipeline = pipeline.filter(all);
+        }
+    }
+
+    @Test
+    public void compile_flatMapLast() {
+        CompiledPipeline<Integer> pipeline = Futile.from(Arrays.asList(1, 2, 3)).compile()
+                .flatMap(new Function1<Integer, List<Integer>>() {
+                    @Override
+                    public List<Integer> apply(Integer it) {
+                        return Collections.nCopies(it, it);
+                    }
+                })
+                .filter(new Predicate<Integer>() {
+                    @Override
+                    public boolean apply(Integer it) {
+                        return it > 1;
+                    }
+                })
+                .flatMap(new Function1<Integer, List<Integer>>() {
+                    @Override
+                    public List<Integer> apply(Integer it) {
+                        return Arrays.asList(it, -it);
+                    }
+                });
+        assertThat(pipeline.toArrayList()).containsExactly(2, -2, 2, -2, 3, -3, 3, -3, 3, -3);
+    }
+
+    @Test
+    public void compile_noStage() {
+        assertThat(Futile.from(Arrays.asList(1, 2, 3)).compile().toArrayList()).containsExactly(1, 2, 3);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void compile_flatMapReturningNull() {
+        Futile.from(Arrays.asList(1, 2, 3)).compile().flatMap(new Function1<Integer, List<Integer>>() {
+            @Override
+            public List<Integer> apply(Integer it) {
+                return null;
+            }
+        }).toArrayList();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void compile_nullFunction() {
+        Futile.from(Arrays.asList(1, 2, 3)).compile().map(null);
+    }
+
+    @Test
+    public void mapConcurrently() {
+        assertThat(Futile.from(Arrays.asList("foo", "bar", "baz")).mapConcurrently(new Function1<String, String>() {
+            @Override
+            public String apply(String it) {
+                return "a" + it;
+            }
+        }, 2, 1)).containsExactly("afoo", "abar", "abaz");
+    }
+
+    /**
+     * An iterable that can only be iterated once, standing for a queue or a generator
+     */
+    private static Iterable<Integer> range(final int size) {
+        final Iterator<Integer> iterator = new Iterator<Integer>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return next++;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        return new Iterable<Integer>() {
+            private boolean iterated;
+
+            @Override
+            public Iterator<Integer> iterator() {
+                if (iterated) {
+                    throw new IllegalStateException("Already iterated");
+                }
+                iterated = true;
+                return iterator;
+            }
+        };
+    }
+
 
 }
\ No newline at end of file